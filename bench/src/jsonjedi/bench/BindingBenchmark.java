@@ -0,0 +1,172 @@
+package jsonjedi.bench;
+
+import static java.lang.invoke.MethodHandles.lookup;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import jsonjedi.JSONSchema;
+import jsonjedi.JSONSchemaBuilder;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Binds an array of flat users to objects, with the different kinds of rules.
+ *
+ * A score is a number of records per second, so with {@code -prof gc}
+ * {@code gc.alloc.rate.norm} is the number of bytes allocated per record.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BindingBenchmark {
+  static final int RECORDS = 10_000;
+
+  static class User {
+    int id;
+    String firstName;
+    String lastName;
+    int age;
+    double score;
+    boolean active;
+    String bio;
+  }
+
+  static class Contact {
+    String firstName;
+    Address address;
+    List<Phone> phones;
+  }
+
+  static class Address {
+    String streetAddress;
+    String city;
+    String state;
+    int postalCode;
+  }
+
+  static class Phone {
+    String type;
+    String number;
+  }
+
+  private byte[] users;
+  private JSONSchema<User> implicitSchema;
+  private JSONSchema<User> canonicalSchema;
+  private JSONSchema<User> explicitSchema;
+  private JSONSchema<User> primitiveSchema;
+  private JSONSchema<Contact> nestedSchema;
+
+  @Setup
+  public void setup() {
+    users = Corpus.users(RECORDS);
+
+    implicitSchema = JSONSchemaBuilder.schema(lookup(), User.class, builder -> {
+      // implicit fields only
+    });
+    canonicalSchema = JSONSchemaBuilder.schema(lookup(), User.class, builder -> {
+      builder.canonicalStrings(256);
+    });
+    explicitSchema = JSONSchemaBuilder.schema(lookup(), User.class, builder -> {
+      builder.disallowImplicit().
+        value("id", Long.class, (user, id) -> user.id = id.intValue()).
+        value("firstName", String.class, (user, firstName) -> user.firstName = firstName).
+        value("lastName", String.class, (user, lastName) -> user.lastName = lastName).
+        value("age", Long.class, (user, age) -> user.age = age.intValue()).
+        value("score", Double.class, (user, score) -> user.score = score).
+        value("active", Boolean.class, (user, active) -> user.active = active).
+        value("bio", String.class, (user, bio) -> user.bio = bio);
+    });
+    primitiveSchema = JSONSchemaBuilder.schema(lookup(), User.class, builder -> {
+      builder.disallowImplicit().
+        value("id", (User user, int id) -> user.id = id).
+        value("age", (User user, int age) -> user.age = age).
+        value("score", (User user, double score) -> user.score = score);
+    });
+    nestedSchema = JSONSchemaBuilder.schema(lookup(), Contact.class, builder -> {
+      builder.
+        entry("address", Address.class, (contact, stream) -> {
+          contact.address = stream.findFirst().orElse(null);
+        }).
+        entry("phoneNumber", Phone.class, Collectors.toList(), (contact, phones) -> {
+          contact.phones = phones;
+        });
+    });
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(RECORDS)
+  public void implicitFields(Blackhole blackhole, Bytes bytes) {
+    implicitSchema.stream(users, 0, users.length).forEach(blackhole::consume);
+    bytes.bytes += users.length;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(RECORDS)
+  public void canonicalStrings(Blackhole blackhole, Bytes bytes) {
+    canonicalSchema.stream(users, 0, users.length).forEach(blackhole::consume);
+    bytes.bytes += users.length;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(RECORDS)
+  public void explicitValues(Blackhole blackhole, Bytes bytes) {
+    explicitSchema.stream(users, 0, users.length).forEach(blackhole::consume);
+    bytes.bytes += users.length;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(RECORDS)
+  public void primitiveValues(Blackhole blackhole, Bytes bytes) {
+    primitiveSchema.stream(users, 0, users.length).forEach(blackhole::consume);
+    bytes.bytes += users.length;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(RECORDS)
+  public void nestedEntries(Blackhole blackhole, Bytes bytes) {
+    nestedSchema.stream(users, 0, users.length).forEach(blackhole::consume);
+    bytes.bytes += users.length;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(RECORDS)
+  public void jsonSimpleDom(Blackhole blackhole, Bytes bytes) throws Exception {
+    JSONArray array = (JSONArray)new JSONParser().parse(
+        new InputStreamReader(new ByteArrayInputStream(users), UTF_8));
+    for(Object element: array) {
+      JSONObject object = (JSONObject)element;
+      User user = new User();
+      user.id = ((Number)object.get("id")).intValue();
+      user.firstName = (String)object.get("firstName");
+      user.lastName = (String)object.get("lastName");
+      user.age = ((Number)object.get("age")).intValue();
+      user.score = ((Number)object.get("score")).doubleValue();
+      user.active = (Boolean)object.get("active");
+      user.bio = (String)object.get("bio");
+      blackhole.consume(user);
+    }
+    bytes.bytes += users.length;
+  }
+}
@@ -0,0 +1,140 @@
+package jsonjedi.bench;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.util.Random;
+
+/**
+ * Generates the JSON documents used by the benchmarks.
+ *
+ * The generators are seeded so that two runs of the same benchmark
+ * parse exactly the same bytes.
+ */
+final class Corpus {
+  private static final String[] FIRST_NAMES = { "John", "Jane", "Bob", "Alice", "\u00c8ve", "Zo\u00eb", "Mallory", "Trent" };
+  private static final String[] LAST_NAMES = { "Smith", "Doe", "M\u00fcller", "O'Brien", "Nguyen", "Kowalski" };
+  private static final String[] PHONE_TYPES = { "home", "mobile", "fax" };
+
+  private Corpus() {
+    throw new AssertionError();
+  }
+
+  /**
+   * Returns an array of {@code count} users shaped like {@code sample.json},
+   * each user has a nested address and a variable number of phone numbers.
+   */
+  static byte[] users(int count) {
+    Random random = new Random(0);
+    StringBuilder builder = new StringBuilder(count * 320).append('[');
+    for(int i = 0; i < count; i++) {
+      if (i != 0) {
+        builder.append(',');
+      }
+      appendUser(builder, random, i);
+    }
+    return builder.append(']').toString().getBytes(UTF_8);
+  }
+
+  /**
+   * Returns the same users as {@link #users(int)}, one user per line.
+   */
+  static byte[] userLines(int count) {
+    Random random = new Random(0);
+    StringBuilder builder = new StringBuilder(count * 320);
+    for(int i = 0; i < count; i++) {
+      appendUser(builder, random, i);
+      builder.append('\n');
+    }
+    return builder.toString().getBytes(UTF_8);
+  }
+
+  private static void appendUser(StringBuilder builder, Random random, int id) {
+    builder.append("{\"id\":").append(id).
+      append(",\"firstName\":\"").append(FIRST_NAMES[random.nextInt(FIRST_NAMES.length)]).
+      append("\",\"lastName\":\"").append(LAST_NAMES[random.nextInt(LAST_NAMES.length)]).
+      append("\",\"age\":").append(18 + random.nextInt(80)).
+      append(",\"score\":").append(random.nextInt(100_000) / 100.0).
+      append(",\"active\":").append(random.nextBoolean()).
+      append(",\"bio\":\"line one\\nline \\\"two\\\" \\u00e9t\\u00e9\"").
+      append(",\"address\":{\"streetAddress\":\"").append(random.nextInt(1000)).append(" 2nd Street\"").
+      append(",\"city\":\"New York\",\"state\":\"NY\",\"postalCode\":").append(10000 + random.nextInt(90000)).
+      append("},\"phoneNumber\":[");
+    int phones = 1 + random.nextInt(3);
+    for(int j = 0; j < phones; j++) {
+      if (j != 0) {
+        builder.append(',');
+      }
+      builder.append("{\"type\":\"").append(PHONE_TYPES[j]).
+        append("\",\"number\":\"").append(200 + random.nextInt(800)).append(" 555-").append(1000 + random.nextInt(9000)).
+        append("\"}");
+    }
+    builder.append("]}");
+  }
+
+  /**
+   * Returns an array of {@code count} objects with {@code width} keys each,
+   * the values are a mix of strings, numbers, booleans, null, arrays and objects.
+   * Only the keys {@code "key0"} to {@code "key4"} are scalar on every object.
+   */
+  static byte[] wide(int count, int width) {
+    Random random = new Random(0);
+    StringBuilder builder = new StringBuilder(count * width * 24).append('[');
+    for(int i = 0; i < count; i++) {
+      if (i != 0) {
+        builder.append(',');
+      }
+      builder.append('{');
+      for(int k = 0; k < width; k++) {
+        if (k != 0) {
+          builder.append(',');
+        }
+        builder.append("\"key").append(k).append("\":");
+        switch(k < 5? k % 2: random.nextInt(6)) {
+        case 0:
+          builder.append(random.nextInt());
+          break;
+        case 1:
+          builder.append("\"value ").append(random.nextInt(10_000)).append('"');
+          break;
+        case 2:
+          builder.append(random.nextDouble());
+          break;
+        case 3:
+          builder.append(random.nextBoolean()? "true": "null");
+          break;
+        case 4:
+          builder.append("[1,[2,3],{\"a\":\"]\"}]");
+          break;
+        default:
+          builder.append("{\"nested\":{\"b\":[\"}\",false]}}");
+        }
+      }
+      builder.append('}');
+    }
+    return builder.append(']').toString().getBytes(UTF_8);
+  }
+
+  /**
+   * Returns a document shaped like {@code big.json}: a single {@code "web-app"}
+   * object with {@code servlets} servlets, each with a large {@code "init-param"} object.
+   */
+  static byte[] webApp(int servlets) {
+    StringBuilder builder = new StringBuilder(servlets * 2048).append("{\"web-app\":{\"servlet\":[");
+    for(int i = 0; i < servlets; i++) {
+      if (i != 0) {
+        builder.append(',');
+      }
+      builder.append("{\"servlet-name\":\"servlet").append(i).
+        append("\",\"servlet-class\":\"org.cofax.cds.CDSServlet").append(i).
+        append("\",\"init-param\":{");
+      for(int p = 0; p < 40; p++) {
+        builder.append("\"configGlossary:param").append(p).append("\":\"/content/static/").append(p).append("\",");
+      }
+      builder.append("\"templatePath\":\"templates/").append(i).
+        append("\",\"maxUrlLength\":500,\"useJSP\":false,\"dataStore\":{\"name\":\"cofax\",\"initConns\":10}}}");
+    }
+    return builder.append("],\"servlet-mapping\":{\"cofaxCDS\":\"/\",\"cofaxEmail\":\"/cofaxutil/aemail/*\"}").
+      append(",\"taglib\":{\"taglib-uri\":\"cofax.tld\",\"taglib-location\":\"/WEB-INF/tlds/cofax.tld\"}}}").
+      toString().getBytes(UTF_8);
+  }
+}
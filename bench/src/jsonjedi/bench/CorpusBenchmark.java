@@ -0,0 +1,138 @@
+package jsonjedi.bench;
+
+import static java.lang.invoke.MethodHandles.lookup;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+import java.util.concurrent.TimeUnit;
+
+import jsonjedi.JSONSchema;
+import jsonjedi.JSONSchemaBuilder;
+import jsonjedi.bench.BindingBenchmark.User;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Parses a large generated corpus of users from the different kinds of input,
+ * sequentially, in parallel and as JSON lines.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CorpusBenchmark {
+  static final int RECORDS = 100_000;
+
+  private byte[] users;
+  private byte[] userLines;
+  private Path path;
+  private JSONSchema<User> schema;
+  private JSONSchema<User> pipelinedSchema;
+
+  @Setup
+  public void setup() throws IOException {
+    users = Corpus.users(RECORDS);
+    userLines = Corpus.userLines(RECORDS);
+    path = Files.createTempFile("corpus", ".json");
+    Files.write(path, users);
+    schema = JSONSchemaBuilder.schema(lookup(), User.class, builder -> {
+      // implicit fields only
+    });
+    pipelinedSchema = schema.pipelined(runnable -> {
+      Thread thread = new Thread(runnable);
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    Files.delete(path);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(RECORDS)
+  public void byteArray(Blackhole blackhole, Bytes bytes) {
+    schema.stream(users, 0, users.length).forEach(blackhole::consume);
+    bytes.bytes += users.length;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(RECORDS)
+  public void reader(Blackhole blackhole, Bytes bytes) throws IOException {
+    schema.stream(new InputStreamReader(new ByteArrayInputStream(users), UTF_8)).forEach(blackhole::consume);
+    bytes.bytes += users.length;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(RECORDS)
+  public void mappedFile(Blackhole blackhole, Bytes bytes) throws IOException {
+    try(Stream<User> stream = schema.stream(path)) {
+      stream.forEach(blackhole::consume);
+    }
+    bytes.bytes += users.length;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(RECORDS)
+  public void parallel(Blackhole blackhole, Bytes bytes) {
+    blackhole.consume(schema.stream(users, 0, users.length).parallel().mapToInt(user -> user.age).sum());
+    bytes.bytes += users.length;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(RECORDS)
+  public void pipelined(Blackhole blackhole, Bytes bytes) {
+    pipelinedSchema.stream(users, 0, users.length).forEach(blackhole::consume);
+    bytes.bytes += users.length;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(RECORDS)
+  public void jsonLines(Blackhole blackhole, Bytes bytes) {
+    schema.streamLines(userLines, 0, userLines.length).forEach(blackhole::consume);
+    bytes.bytes += userLines.length;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(RECORDS)
+  public void jsonSimpleDom(Blackhole blackhole, Bytes bytes) throws Exception {
+    JSONArray array = (JSONArray)new JSONParser().parse(
+        new InputStreamReader(new ByteArrayInputStream(users), UTF_8));
+    for(Object element: array) {
+      JSONObject object = (JSONObject)element;
+      User user = new User();
+      user.id = ((Number)object.get("id")).intValue();
+      user.firstName = (String)object.get("firstName");
+      user.lastName = (String)object.get("lastName");
+      user.age = ((Number)object.get("age")).intValue();
+      user.score = ((Number)object.get("score")).doubleValue();
+      user.active = (Boolean)object.get("active");
+      user.bio = (String)object.get("bio");
+      blackhole.consume(user);
+    }
+    bytes.bytes += users.length;
+  }
+}
@@ -0,0 +1,85 @@
+package jsonjedi.bench;
+
+import static java.lang.invoke.MethodHandles.lookup;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.util.concurrent.TimeUnit;
+
+import jsonjedi.JSONSchema;
+import jsonjedi.JSONSchemaBuilder;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Picks 5 keys out of objects of 200 keys, the other values,
+ * including nested arrays and objects, are skipped.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DiscardBenchmark {
+  static final int RECORDS = 2_000;
+
+  static class Row {
+    int key0;
+    String key1;
+    int key2;
+    String key3;
+    int key4;
+  }
+
+  private byte[] rows;
+  private JSONSchema<Row> schema;
+
+  @Setup
+  public void setup() {
+    rows = Corpus.wide(RECORDS, 200);
+    schema = JSONSchemaBuilder.schema(lookup(), Row.class, builder -> {
+      // implicit fields only
+    });
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(RECORDS)
+  public void skipUnknownKeys(Blackhole blackhole, Bytes bytes) {
+    schema.stream(rows, 0, rows.length).forEach(blackhole::consume);
+    bytes.bytes += rows.length;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(RECORDS)
+  public void jsonSimpleDom(Blackhole blackhole, Bytes bytes) throws Exception {
+    JSONArray array = (JSONArray)new JSONParser().parse(
+        new InputStreamReader(new ByteArrayInputStream(rows), UTF_8));
+    for(Object element: array) {
+      JSONObject object = (JSONObject)element;
+      Row row = new Row();
+      row.key0 = ((Number)object.get("key0")).intValue();
+      row.key1 = (String)object.get("key1");
+      row.key2 = ((Number)object.get("key2")).intValue();
+      row.key3 = (String)object.get("key3");
+      row.key4 = ((Number)object.get("key4")).intValue();
+      blackhole.consume(row);
+    }
+    bytes.bytes += rows.length;
+  }
+}
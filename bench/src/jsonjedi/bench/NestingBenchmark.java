@@ -0,0 +1,112 @@
+package jsonjedi.bench;
+
+import static java.lang.invoke.MethodHandles.lookup;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import jsonjedi.JSONSchema;
+import jsonjedi.JSONSchemaBuilder;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Parses a document shaped like {@code big.json} with the schema of {@code Big},
+ * three levels of nested builders where a record is a servlet.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NestingBenchmark {
+  static final int SERVLETS = 1_000;
+
+  static class WebApps {
+    WebApp webApp;
+  }
+
+  static class WebApp {
+    List<Servlet> servlets;
+  }
+
+  static class Servlet {
+    String name;
+    String templatePath;
+  }
+
+  static class InitParam {
+    String templatePath;
+  }
+
+  private byte[] document;
+  private JSONSchema<WebApps> schema;
+
+  @Setup
+  public void setup() {
+    document = Corpus.webApp(SERVLETS);
+    schema = JSONSchemaBuilder.schema(lookup(), WebApps.class, builder -> {
+      builder.disallowImplicit().
+        entry("web-app", WebApp.class, builder2 -> {
+          builder2.entry("servlet", Servlet.class, builder3 -> {
+            builder3.disallowImplicit().
+              value("servlet-name", String.class, (servlet, name) -> servlet.name = name).
+              entry("init-param", InitParam.class, (servlet, stream) -> {
+                stream.findFirst().ifPresent(initParam -> servlet.templatePath = initParam.templatePath);
+              });
+          },
+          Collectors.toList(), (webApp, servlets) -> webApp.servlets = servlets);
+        },
+        (webApps, stream) -> webApps.webApp = stream.findFirst().get());
+    });
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(SERVLETS)
+  public void nestedBuilders(Blackhole blackhole, Bytes bytes) {
+    schema.stream(document, 0, document.length).forEach(blackhole::consume);
+    bytes.bytes += document.length;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(SERVLETS)
+  public void jsonSimpleDom(Blackhole blackhole, Bytes bytes) throws Exception {
+    JSONObject root = (JSONObject)new JSONParser().parse(
+        new InputStreamReader(new ByteArrayInputStream(document), UTF_8));
+    JSONArray array = (JSONArray)((JSONObject)root.get("web-app")).get("servlet");
+    WebApp webApp = new WebApp();
+    webApp.servlets = new ArrayList<>();
+    for(Object element: array) {
+      JSONObject object = (JSONObject)element;
+      Servlet servlet = new Servlet();
+      servlet.name = (String)object.get("servlet-name");
+      JSONObject initParam = (JSONObject)object.get("init-param");
+      if (initParam != null) {
+        servlet.templatePath = (String)initParam.get("templatePath");
+      }
+      webApp.servlets.add(servlet);
+    }
+    blackhole.consume(webApp);
+    bytes.bytes += document.length;
+  }
+}
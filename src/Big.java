@@ -1,11 +1,9 @@
 import static java.lang.invoke.MethodHandles.lookup;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.nio.charset.Charset;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 import java.util.stream.Collectors;
@@ -32,6 +30,10 @@ public class Big {
     String templatePath;
   }
   
+  static class TemplatePaths {
+    final List<String> paths = new ArrayList<>();
+  }
+  
   public static void main(String[] args) throws IOException {
     JSONSchema<WebApps> schema = JSONSchemaBuilder.schema(lookup(), WebApps.class, builder -> {
       builder.disallowImplicit().
@@ -53,11 +55,22 @@ public class Big {
     });
 
     Path path = Paths.get("big.json");
-    try(BufferedReader reader = Files.newBufferedReader(path, Charset.defaultCharset())) {
-      WebApps webApps = schema.stream(reader).findFirst().get();
+    try(Stream<WebApps> stream = schema.stream(path)) {
+      WebApps webApps = stream.findFirst().get();
       webApps.webApp.servlets.stream().
         map(servlet -> servlet.templatePath).filter(path2 -> path2 != null).
         forEach(System.out::println);
     }
+    
+    // the same values selected by a path, no intermediate object is created
+    JSONSchema<TemplatePaths> pathSchema = JSONSchemaBuilder.schema(lookup(), TemplatePaths.class, builder -> {
+      builder.disallowImplicit().
+        path("web-app.servlet[*].init-param.templatePath", String.class, (templatePaths, templatePath) -> {
+          templatePaths.paths.add(templatePath);
+        });
+    });
+    try(Stream<TemplatePaths> stream = pathSchema.stream(path)) {
+      stream.findFirst().get().paths.forEach(System.out::println);
+    }
   }
 }
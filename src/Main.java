@@ -51,8 +51,8 @@ public class Main {
   public static void main(String[] args) throws IOException {
     JSONSchema<User> schema = JSONSchemaBuilder.schema(lookup(), User.class, builder -> {
       builder.
-        entry("address", Address.class, (user, stream) -> {
-          user.addresses = stream.collect(Collectors.toList());
+        entry("address", Address.class, Collectors.toList(), (user, addresses) -> {
+          user.addresses = addresses;
         }).
         entry("phoneNumber", Phone.class, (user, stream) -> {
           //stream.forEach(System.out::println);
@@ -0,0 +1,315 @@
+package jsonjedi;
+
+import static java.lang.invoke.MethodHandles.explicitCastArguments;
+import static java.lang.invoke.MethodHandles.foldArguments;
+import static java.lang.invoke.MethodHandles.identity;
+import static java.lang.invoke.MethodHandles.insertArguments;
+import static java.lang.invoke.MethodType.methodType;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles.Lookup;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import jsonjedi.JSONSchemaBuilder.BooleanValueRule;
+import jsonjedi.JSONSchemaBuilder.DoubleValueRule;
+import jsonjedi.JSONSchemaBuilder.IntValueRule;
+import jsonjedi.JSONSchemaBuilder.LongValueRule;
+import jsonjedi.JSONSchemaBuilder.ObjectValueRule;
+import jsonjedi.JSONSchemaBuilder.ValueRule;
+
+/**
+ * The part of a schema that only depends on a class and on the lookup used to access it:
+ * the constructors and the setters and getters of the implicit fields.
+ * The getters of a record are its accessors.
+ *
+ * The bindings are shared by all the builders of a class, they are stored in a {@link ClassValue}
+ * so the class can still be unloaded. A binding is only cached if the lookup class is loaded
+ * by the class loader of the class or by the bootstrap class loader, so the cache never retains
+ * another class loader. The constructors, setters and getters are resolved the first time
+ * they are used.
+ */
+final class ClassBinding {
+  private static final ClassValue<ConcurrentHashMap<Object, ClassBinding>> CACHE =
+      new ClassValue<ConcurrentHashMap<Object, ClassBinding>>() {
+        @Override
+        protected ConcurrentHashMap<Object, ClassBinding> computeValue(Class<?> type) {
+          return new ConcurrentHashMap<>();
+        }
+      };
+
+  // a constructor and the keys of its parameters
+  static final class Creator {
+    final String[] keys;
+    final MethodHandle constructor;  // of type (parameterTypes)type
+
+    Creator(String[] keys, MethodHandle constructor) {
+      this.keys = keys;
+      this.constructor = constructor;
+    }
+  }
+
+  private final Lookup lookup;
+  private final Class<?> type;
+  private volatile MethodHandle constructor;            // initialized by constructor()
+  private volatile Creator recordCreator;               // initialized by recordCreator()
+  private volatile Map<String, ValueRule> setters;      // initialized by setters()
+  private volatile Map<String, MethodHandle> getters;   // initialized by getters()
+  private volatile Map<String, Type> getterTypes;       // initialized by getterTypes()
+  private volatile MethodHandle clearer;                // initialized by clearer()
+
+  private ClassBinding(Lookup lookup, Class<?> type) {
+    this.lookup = lookup;
+    this.type = type;
+  }
+
+  static ClassBinding of(Lookup lookup, Class<?> type) {
+    ClassLoader loader = lookup.lookupClass().getClassLoader();
+    if (loader != null && loader != type.getClassLoader()) {
+      return new ClassBinding(lookup, type);
+    }
+    Object key = Arrays.asList(lookup.lookupClass(), lookup.lookupModes());
+    ConcurrentHashMap<Object, ClassBinding> bindings = CACHE.get(type);
+    ClassBinding binding = bindings.get(key);
+    if (binding == null) {
+      // may be created twice by concurrent threads, only one is kept
+      ClassBinding newBinding = new ClassBinding(lookup, type);
+      binding = bindings.putIfAbsent(key, newBinding);
+      if (binding == null) {
+        binding = newBinding;
+      }
+    }
+    return binding;
+  }
+
+  // the no-arg constructor of type ()Object
+  MethodHandle constructor() {
+    MethodHandle constructor = this.constructor;
+    if (constructor == null) {
+      this.constructor = constructor = getConstructor(lookup, type);
+    }
+    return constructor;
+  }
+
+  // the canonical constructor of a record or null if the class is not a record
+  Creator recordCreator() {
+    Creator creator = recordCreator;
+    if (creator == null) {
+      Object[] components = recordComponents(type);
+      if (components == null) {
+        return null;
+      }
+      String[] keys = new String[components.length];
+      Class<?>[] parameterTypes = new Class<?>[components.length];
+      for(int i = 0; i < components.length; i++) {
+        keys[i] = (String)invoke(components[i], "getName");
+        parameterTypes[i] = (Class<?>)invoke(components[i], "getType");
+      }
+      MethodHandle mh;
+      try {
+        mh = lookup.findConstructor(type, methodType(void.class, parameterTypes));
+      } catch (NoSuchMethodException | IllegalAccessException e) {
+        throw new IllegalStateException(e);
+      }
+      recordCreator = creator = new Creator(keys, mh);
+    }
+    return creator;
+  }
+
+  // the only constructor which parameters are the keys
+  Creator creator(String[] keys) {
+    Constructor<?> found = null;
+    for(Constructor<?> constructor: type.getDeclaredConstructors()) {
+      if (constructor.getParameterCount() != keys.length) {
+        continue;
+      }
+      if (found != null) {
+        throw new IllegalStateException("several constructors of " + type.getName() + " have " + keys.length + " parameters");
+      }
+      found = constructor;
+    }
+    if (found == null) {
+      throw new IllegalStateException("no constructor of " + type.getName() + " has " + keys.length + " parameters");
+    }
+    MethodHandle mh;
+    try {
+      mh = lookup.unreflectConstructor(found);
+    } catch (IllegalAccessException e) {
+      throw new IllegalStateException(e);
+    }
+    return new Creator(keys, mh);
+  }
+
+  // the value rules of the implicit fields in declaration order
+  Map<String, ValueRule> setters() {
+    Map<String, ValueRule> setters = this.setters;
+    if (setters == null) {
+      LinkedHashMap<String, ValueRule> map = new LinkedHashMap<>();
+      for(Field field: type.getDeclaredFields()) {
+        if (isImplicit(field)) {
+          map.put(field.getName(), asSetter(lookup, field));
+        }
+      }
+      this.setters = setters = Collections.unmodifiableMap(map);
+    }
+    return setters;
+  }
+
+  // the getters of type (Object)fieldType of the implicit fields in declaration order,
+  // or the accessors of the components of a record
+  Map<String, MethodHandle> getters() {
+    Map<String, MethodHandle> getters = this.getters;
+    if (getters == null) {
+      LinkedHashMap<String, MethodHandle> map = new LinkedHashMap<>();
+      Object[] components = recordComponents(type);
+      if (components != null) {
+        for(Object component: components) {
+          map.put((String)invoke(component, "getName"), asGetter(lookup, (Method)invoke(component, "getAccessor")));
+        }
+      } else {
+        for(Field field: type.getDeclaredFields()) {
+          if (isImplicit(field)) {
+            map.put(field.getName(), asGetter(lookup, field));
+          }
+        }
+      }
+      this.getters = getters = Collections.unmodifiableMap(map);
+    }
+    return getters;
+  }
+
+  // the generic types of the getters, used to check that the values can be written
+  Map<String, Type> getterTypes() {
+    Map<String, Type> getterTypes = this.getterTypes;
+    if (getterTypes == null) {
+      LinkedHashMap<String, Type> map = new LinkedHashMap<>();
+      Object[] components = recordComponents(type);
+      if (components != null) {
+        for(Object component: components) {
+          map.put((String)invoke(component, "getName"), (Type)invoke(component, "getGenericType"));
+        }
+      } else {
+        for(Field field: type.getDeclaredFields()) {
+          if (isImplicit(field)) {
+            map.put(field.getName(), field.getGenericType());
+          }
+        }
+      }
+      this.getterTypes = getterTypes = Collections.unmodifiableMap(map);
+    }
+    return getterTypes;
+  }
+
+  // sets the declared fields that are not static nor final to their default value,
+  // the transient fields too because they may be set by an entry, of type (Object)void
+  MethodHandle clearer() {
+    MethodHandle clearer = this.clearer;
+    if (clearer == null) {
+      clearer = identity(Object.class).asType(methodType(void.class, Object.class));
+      for(Field field: type.getDeclaredFields()) {
+        int modifiers = field.getModifiers();
+        if (field.isSynthetic() || Modifier.isStatic(modifiers) || Modifier.isFinal(modifiers)) {
+          continue;
+        }
+        MethodHandle setter;
+        try {
+          setter = lookup.unreflectSetter(field);
+        } catch (IllegalAccessException e) {
+          throw new IllegalStateException(e);
+        }
+        Object defaultValue = Array.get(Array.newInstance(field.getType(), 1), 0);
+        MethodHandle clear = insertArguments(setter, 1, defaultValue).asType(methodType(void.class, Object.class));
+        clearer = foldArguments(clearer, clear);
+      }
+      this.clearer = clearer;
+    }
+    return clearer;
+  }
+
+  // the record components are accessed reflectively, they are not available in Java 8
+  private static Object[] recordComponents(Class<?> type) {
+    Class<?> superclass = type.getSuperclass();
+    if (superclass == null || !superclass.getName().equals("java.lang.Record")) {
+      return null;
+    }
+    return (Object[])invoke(type, "getRecordComponents");
+  }
+
+  private static Object invoke(Object receiver, String name) {
+    try {
+      return receiver.getClass().getMethod(name).invoke(receiver);
+    } catch (NoSuchMethodException | IllegalAccessException e) {
+      throw new AssertionError(e);
+    } catch (InvocationTargetException e) {
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+
+  private static boolean isImplicit(Field field) {
+    int modifiers = field.getModifiers();
+    return !field.isSynthetic() && !Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers);
+  }
+
+  private static MethodHandle getConstructor(Lookup lookup, Class<?> type) {
+    MethodHandle mh;
+    try {
+      mh = lookup.findConstructor(type, methodType(void.class));
+    } catch (NoSuchMethodException | IllegalAccessException e) {
+      throw new IllegalStateException(e);
+    }
+    return mh.asType(methodType(Object.class));
+  }
+
+  private static MethodHandle asGetter(Lookup lookup, Field field) {
+    MethodHandle mh;
+    try {
+      mh = lookup.unreflectGetter(field);
+    } catch (IllegalAccessException e) {
+      throw new IllegalStateException(e);
+    }
+    return mh.asType(methodType(field.getType(), Object.class));
+  }
+
+  private static MethodHandle asGetter(Lookup lookup, Method accessor) {
+    MethodHandle mh;
+    try {
+      mh = lookup.unreflect(accessor);
+    } catch (IllegalAccessException e) {
+      throw new IllegalStateException(e);
+    }
+    return mh.asType(methodType(accessor.getReturnType(), Object.class));
+  }
+
+  private static ValueRule asSetter(Lookup lookup, Field field) {
+    MethodHandle mh;
+    try {
+      mh = lookup.unreflectSetter(field);
+    } catch (IllegalAccessException e) {
+      throw new IllegalStateException(e);
+    }
+    Class<?> type = field.getType();
+    if (type == int.class || type == short.class || type == byte.class) {
+      return new IntValueRule(explicitCastArguments(mh, methodType(void.class, Object.class, int.class)), type);
+    }
+    if (type == long.class) {
+      return new LongValueRule(mh.asType(methodType(void.class, Object.class, long.class)));
+    }
+    if (type == double.class || type == float.class) {
+      return new DoubleValueRule(explicitCastArguments(mh, methodType(void.class, Object.class, double.class)));
+    }
+    if (type == boolean.class) {
+      return new BooleanValueRule(mh.asType(methodType(void.class, Object.class, boolean.class)));
+    }
+    return new ObjectValueRule(mh.asType(methodType(void.class, Object.class, Object.class)));
+  }
+}
@@ -0,0 +1,271 @@
+package jsonjedi;
+
+import static java.lang.invoke.MethodHandles.lookup;
+import static java.lang.invoke.MethodType.methodType;
+
+import java.lang.invoke.MethodHandle;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * A batch of rows stored by columns, each top level object of a columnar schema
+ * is a row which declared values are stored in dense arrays.
+ * The int, long and double columns are arrays of primitive values, a missing or null value is 0.
+ * A string column is an array of codes in the dictionary of the column, a missing or null
+ * value has the code -1; the dictionary is specific to the batch and lists its distinct strings
+ * in order of first appearance.
+ *
+ * The arrays returned by the columns may be longer than the batch, only
+ * the first {@link #size()} values are defined.
+ * A batch is never modified once it is sent to the stream.
+ *
+ * @see JSONSchemaBuilder#columnar(int, java.util.function.Consumer)
+ */
+public final class JSONColumns {
+  // the columns of a schema, shared by all its batches
+  static final class Layout {
+    final int batchSize;
+    final HashMap<String, Integer> indexes = new HashMap<>();
+    final Class<?>[] types;
+
+    Layout(int batchSize, Class<?>[] types) {
+      this.batchSize = batchSize;
+      this.types = types;
+    }
+  }
+
+  // the distinct strings of a string column
+  private static final class Dictionary {
+    final HashMap<String, Integer> codes = new HashMap<>();
+    String[] strings = new String[16];
+
+    int code(String string) {
+      Integer code = codes.get(string);
+      if (code != null) {
+        return code;
+      }
+      int size = codes.size();
+      if (size == strings.length) {
+        strings = Arrays.copyOf(strings, size << 1);
+      }
+      strings[size] = string;
+      codes.put(string, size);
+      return size;
+    }
+
+    // removes the strings added since the dictionary had that size
+    void truncate(int size) {
+      for(int code = codes.size(); --code >= size;) {
+        codes.remove(strings[code]);
+        strings[code] = null;
+      }
+    }
+  }
+
+  private final Layout layout;
+  private final Object[] arrays;            // int[], long[] or double[], int[] codes for a string column
+  private final Dictionary[] dictionaries;  // null if not a string column
+  private final int[] dictionarySizes;      // sizes of the dictionaries at the start of the current row
+  private int capacity;                     // of the arrays
+  private int size;
+
+  JSONColumns(Layout layout) {
+    this.layout = layout;
+    Class<?>[] types = layout.types;
+    int capacity = this.capacity = Math.min(layout.batchSize, 1 << 16);
+    arrays = new Object[types.length];
+    dictionaries = new Dictionary[types.length];
+    dictionarySizes = new int[types.length];
+    for(int i = 0; i < types.length; i++) {
+      Class<?> type = types[i];
+      if (type == int.class) {
+        arrays[i] = new int[capacity];
+      } else if (type == long.class) {
+        arrays[i] = new long[capacity];
+      } else if (type == double.class) {
+        arrays[i] = new double[capacity];
+      } else {
+        arrays[i] = new int[capacity];
+        dictionaries[i] = new Dictionary();
+      }
+    }
+  }
+
+  boolean isFull() {
+    return size == layout.batchSize;
+  }
+
+  // clears the values of the next row, which may be left by a rejected row
+  void startRow() {
+    Object[] arrays = this.arrays;
+    int row = size;
+    if (row == capacity) {
+      grow();
+    }
+    Class<?>[] types = layout.types;
+    for(int i = 0; i < arrays.length; i++) {
+      Class<?> type = types[i];
+      if (type == long.class) {
+        ((long[])arrays[i])[row] = 0;
+      } else if (type == double.class) {
+        ((double[])arrays[i])[row] = 0;
+      } else if (dictionaries[i] == null) {
+        ((int[])arrays[i])[row] = 0;
+      } else {
+        ((int[])arrays[i])[row] = -1;
+        dictionarySizes[i] = dictionaries[i].codes.size();
+      }
+    }
+  }
+
+  private void grow() {
+    int capacity = this.capacity = (int)Math.min(layout.batchSize, size * 2L);
+    Object[] arrays = this.arrays;
+    for(int i = 0; i < arrays.length; i++) {
+      Object array = arrays[i];
+      if (array instanceof long[]) {
+        arrays[i] = Arrays.copyOf((long[])array, capacity);
+      } else if (array instanceof double[]) {
+        arrays[i] = Arrays.copyOf((double[])array, capacity);
+      } else {
+        arrays[i] = Arrays.copyOf((int[])array, capacity);
+      }
+    }
+  }
+
+  void endRow() {
+    size++;
+  }
+
+  // the strings only seen by a rejected row are removed from the dictionaries
+  void rejectRow() {
+    Dictionary[] dictionaries = this.dictionaries;
+    for(int i = 0; i < dictionaries.length; i++) {
+      if (dictionaries[i] != null) {
+        dictionaries[i].truncate(dictionarySizes[i]);
+      }
+    }
+  }
+
+  // setters of the values of the current row, of type (Object,int,valueType)void
+  static final MethodHandle SET_INT, SET_LONG, SET_DOUBLE, SET_STRING;
+  static {
+    try {
+      SET_INT = lookup().findStatic(JSONColumns.class, "setInt", methodType(void.class, Object.class, int.class, int.class));
+      SET_LONG = lookup().findStatic(JSONColumns.class, "setLong", methodType(void.class, Object.class, int.class, long.class));
+      SET_DOUBLE = lookup().findStatic(JSONColumns.class, "setDouble", methodType(void.class, Object.class, int.class, double.class));
+      SET_STRING = lookup().findStatic(JSONColumns.class, "setString", methodType(void.class, Object.class, int.class, Object.class));
+    } catch (NoSuchMethodException | IllegalAccessException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  private static void setInt(Object columns, int column, int value) {
+    JSONColumns batch = (JSONColumns)columns;
+    ((int[])batch.arrays[column])[batch.size] = value;
+  }
+
+  private static void setLong(Object columns, int column, long value) {
+    JSONColumns batch = (JSONColumns)columns;
+    ((long[])batch.arrays[column])[batch.size] = value;
+  }
+
+  private static void setDouble(Object columns, int column, double value) {
+    JSONColumns batch = (JSONColumns)columns;
+    ((double[])batch.arrays[column])[batch.size] = value;
+  }
+
+  private static void setString(Object columns, int column, Object value) {
+    JSONColumns batch = (JSONColumns)columns;
+    ((int[])batch.arrays[column])[batch.size] = (value == null)? -1: batch.dictionaries[column].code(value.toString());
+  }
+
+  /**
+   * Returns the number of rows of the batch.
+   * @return the number of rows of the batch.
+   */
+  public int size() {
+    return size;
+  }
+
+  private Object column(String key, Class<?> type) {
+    Integer index = layout.indexes.get(key);
+    if (index == null || layout.types[index] != type) {
+      throw new IllegalArgumentException("no " + type.getSimpleName() + " column " + key);
+    }
+    return arrays[index];
+  }
+
+  /**
+   * Returns the values of an int column.
+   * @param key the key of the column.
+   * @return the values of the column, not copied.
+   * @throws IllegalArgumentException if there is no int column with that key.
+   */
+  public int[] intColumn(String key) {
+    return (int[])column(key, int.class);
+  }
+
+  /**
+   * Returns the values of a long column.
+   * @param key the key of the column.
+   * @return the values of the column, not copied.
+   * @throws IllegalArgumentException if there is no long column with that key.
+   */
+  public long[] longColumn(String key) {
+    return (long[])column(key, long.class);
+  }
+
+  /**
+   * Returns the values of a double column.
+   * @param key the key of the column.
+   * @return the values of the column, not copied.
+   * @throws IllegalArgumentException if there is no double column with that key.
+   */
+  public double[] doubleColumn(String key) {
+    return (double[])column(key, double.class);
+  }
+
+  /**
+   * Returns the codes of a string column, the index of each string in the
+   * {@link #dictionary(String) dictionary} of the column or -1.
+   * @param key the key of the column.
+   * @return the codes of the column, not copied.
+   * @throws IllegalArgumentException if there is no string column with that key.
+   */
+  public int[] stringColumn(String key) {
+    return (int[])column(key, String.class);
+  }
+
+  /**
+   * Returns the distinct strings of a string column indexed by their code.
+   * @param key the key of the column.
+   * @return a new array of the strings of the column in the batch.
+   * @throws IllegalArgumentException if there is no string column with that key.
+   */
+  public String[] dictionary(String key) {
+    column(key, String.class);
+    Dictionary dictionary = dictionaries[layout.indexes.get(key)];
+    return Arrays.copyOf(dictionary.strings, dictionary.codes.size());
+  }
+
+  /**
+   * Returns the string of a row of a string column.
+   * @param key the key of the column.
+   * @param row the index of the row.
+   * @return the string or null if the value is missing or null.
+   * @throws IllegalArgumentException if there is no string column with that key.
+   */
+  public String string(String key, int row) {
+    if (row < 0 || row >= size) {
+      throw new IndexOutOfBoundsException("row " + row);
+    }
+    int code = stringColumn(key)[row];
+    return (code == -1)? null: dictionaries[layout.indexes.get(key)].strings[code];
+  }
+
+  @Override
+  public String toString() {
+    return "columns " + layout.indexes.keySet() + " size: " + size;
+  }
+}
@@ -0,0 +1,438 @@
+package jsonjedi;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Objects;
+
+import jsonjedi.JSONLexer.Token;
+
+/**
+ * The offsets of the top level objects (the records) of a UTF-8 encoded JSON file,
+ * either the elements of a top level array or the lines of a JSON lines file,
+ * optionally with the value of a key of each record.
+ *
+ * An index is built in one pass that only skips the records and can be saved
+ * next to the file, then {@link JSONSchema#stream(Path, JSONIndex)} reads the records
+ * at their offsets without scanning the file, a range of the index or the records
+ * with a given key can be selected with {@link #range(int, int)} and {@link #lookup(String)}.
+ * The index is bound to the size of the file, it must be built again if the file changes.
+ *
+ * An index is immutable and can be shared by several threads.
+ */
+public final class JSONIndex {
+  private static final int MAGIC = 0x4a534958;  // JSIX
+  private static final int VERSION = 2;  // the keys are length prefixed UTF-8 bytes
+
+  private final long inputSize;
+  private final long[] positions;
+  private final int[] lengths;
+  private final String[] keys;       // null if no key is indexed
+  private HashMap<String, Integer> firstRecords;  // initialized by lookup
+  private int[] nextRecords;                      // the next record with the same key or -1
+
+  private JSONIndex(long inputSize, long[] positions, int[] lengths, String[] keys) {
+    this.inputSize = inputSize;
+    this.positions = positions;
+    this.lengths = lengths;
+    this.keys = keys;
+  }
+
+  /**
+   * Builds the index of the elements of the top level array of a file,
+   * if the file contains a single object, it is the only record.
+   * The null elements are not indexed.
+   *
+   * @param path the path of the file.
+   * @return a new index.
+   * @throws IOException if an IO error occurs or if the file is malformed.
+   */
+  public static JSONIndex build(Path path) throws IOException {
+    return build(path, null, false);
+  }
+
+  /**
+   * Builds the index of the elements of the top level array of a file
+   * with the values of a key.
+   * The value of a string is the string, the value of a number is its text
+   * as formatted by {@link Long#toString(long)} or {@link Double#toString(double)},
+   * the records without the key or with a value that is null, an object or an array
+   * have no key.
+   *
+   * @param path the path of the file.
+   * @param key the key of the records.
+   * @return a new index.
+   * @throws IOException if an IO error occurs or if the file is malformed.
+   *
+   * @see #build(Path)
+   */
+  public static JSONIndex build(Path path, String key) throws IOException {
+    return build(path, Objects.requireNonNull(key), false);
+  }
+
+  /**
+   * Builds the index of the lines of a JSON lines file (newline delimited JSON),
+   * the blank lines are not indexed.
+   *
+   * @param path the path of the file.
+   * @return a new index.
+   * @throws IOException if an IO error occurs or if a line is malformed.
+   */
+  public static JSONIndex buildLines(Path path) throws IOException {
+    return build(path, null, true);
+  }
+
+  /**
+   * Builds the index of the lines of a JSON lines file with the values of a key.
+   *
+   * @param path the path of the file.
+   * @param key the key of the records.
+   * @return a new index.
+   * @throws IOException if an IO error occurs or if a line is malformed.
+   *
+   * @see #build(Path, String)
+   * @see #buildLines(Path)
+   */
+  public static JSONIndex buildLines(Path path, String key) throws IOException {
+    return build(path, Objects.requireNonNull(key), true);
+  }
+
+  private static final class Builder {
+    private final String key;   // null if no key is indexed
+    private long[] positions = new long[1024];
+    private int[] lengths = new int[1024];
+    private String[] keys;
+    private int count;
+
+    Builder(String key) {
+      this.key = key;
+      keys = (key == null)? null: new String[1024];
+    }
+
+    // the lexer is after the '{' of a record
+    void add(JSONLexer lexer) throws IOException {
+      if (count == positions.length) {
+        positions = Arrays.copyOf(positions, count << 1);
+        lengths = Arrays.copyOf(lengths, count << 1);
+        if (keys != null) {
+          keys = Arrays.copyOf(keys, count << 1);
+        }
+      }
+      long position = lexer.offset();
+      if (key == null) {
+        lexer.skip(1);
+      } else {
+        keys[count] = scanKey(lexer);
+      }
+      long length = lexer.position() - position;
+      if (length > Integer.MAX_VALUE) {
+        throw lexer.error("a record of " + length + " bytes can not be indexed");
+      }
+      positions[count] = position;
+      lengths[count] = (int)length;
+      count++;
+    }
+
+    // returns the value of the key and skips the rest of the record
+    private String scanKey(JSONLexer lexer) throws IOException {
+      Token token = lexer.nextToken();
+      if (token == Token.END_OBJECT) {
+        return null;
+      }
+      for(;;) {
+        if (token != Token.STRING) {
+          throw lexer.error("expect a key but found " + token);
+        }
+        boolean found = key.equals(lexer.stringValue());
+        lexer.expect(Token.COLON);
+        if (found) {
+          String value = keyValue(lexer);
+          lexer.skip(1);
+          return value;
+        }
+        lexer.skipValue();
+        token = lexer.nextToken();
+        if (token == Token.END_OBJECT) {
+          return null;
+        }
+        if (token != Token.COMMA) {
+          throw lexer.error("expect ',' or '}' but found " + token);
+        }
+        token = lexer.nextToken();
+      }
+    }
+
+    private static String keyValue(JSONLexer lexer) throws IOException {
+      Token token = lexer.nextToken();
+      switch(token) {
+      case STRING:
+        return lexer.stringValue();
+      case NUMBER:
+        return lexer.isIntegral()? Long.toString(lexer.longValue()): Double.toString(lexer.doubleValue());
+      case TRUE:
+        return "true";
+      case FALSE:
+        return "false";
+      case NULL:
+        return null;
+      case BEGIN_OBJECT:
+      case BEGIN_ARRAY:
+        lexer.skip(1);
+        return null;
+      default:
+        throw lexer.error("unexpected " + token);
+      }
+    }
+
+    JSONIndex toIndex(long inputSize) {
+      return new JSONIndex(inputSize,
+          Arrays.copyOf(positions, count),
+          Arrays.copyOf(lengths, count),
+          (keys == null)? null: Arrays.copyOf(keys, count));
+    }
+  }
+
+  private static JSONIndex build(Path path, String key, boolean lines) throws IOException {
+    try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      long size = channel.size();
+      JSONLexer lexer = new JSONLexer(new JSONLexer.MappedFileSource(channel, 0, size));
+      Builder builder = new Builder(key);
+      if (lines) {
+        scanLines(lexer, builder);
+      } else {
+        scan(lexer, builder);
+      }
+      return builder.toIndex(size);
+    }
+  }
+
+  private static void scan(JSONLexer lexer, Builder builder) throws IOException {
+    Token token = lexer.nextToken();
+    if (token == Token.BEGIN_OBJECT) {
+      builder.add(lexer);
+    } else {
+      if (token != Token.BEGIN_ARRAY) {
+        throw lexer.error("expect an array or an object but found " + token);
+      }
+      token = lexer.nextToken();
+      if (token != Token.END_ARRAY) {
+        for(;;) {
+          if (token == Token.BEGIN_OBJECT) {
+            builder.add(lexer);
+          } else if (token != Token.NULL) {
+            throw lexer.error("expect an object but found " + token);
+          }
+          token = lexer.nextToken();
+          if (token == Token.END_ARRAY) {
+            break;
+          }
+          if (token != Token.COMMA) {
+            throw lexer.error("expect ',' or ']' but found " + token);
+          }
+          token = lexer.nextToken();
+        }
+      }
+    }
+    if (lexer.nextToken() != Token.EOF) {
+      throw lexer.error("unexpected characters after the end of the JSON value");
+    }
+  }
+
+  private static void scanLines(JSONLexer lexer, Builder builder) throws IOException {
+    while(lexer.nextLine()) {
+      Token token = lexer.nextToken();
+      if (token == Token.EOF) {  // blank line
+        continue;
+      }
+      if (token != Token.BEGIN_OBJECT) {
+        throw lexer.error("expect an object but found " + token);
+      }
+      builder.add(lexer);
+      if (lexer.nextToken() != Token.EOF) {
+        throw lexer.error("unexpected characters after the end of the JSON value");
+      }
+    }
+  }
+
+  /**
+   * Returns the number of records.
+   * @return the number of records.
+   */
+  public int size() {
+    return positions.length;
+  }
+
+  /**
+   * Returns the size in bytes of the indexed file.
+   * @return the size in bytes of the indexed file.
+   */
+  public long inputSize() {
+    return inputSize;
+  }
+
+  /**
+   * Returns the offset in bytes of a record from the start of the file.
+   * @param record the index of the record.
+   * @return the offset in bytes of the record.
+   */
+  public long position(int record) {
+    return positions[record];
+  }
+
+  /**
+   * Returns the length in bytes of a record.
+   * @param record the index of the record.
+   * @return the length in bytes of the record.
+   */
+  public int length(int record) {
+    return lengths[record];
+  }
+
+  /**
+   * Returns the value of the key of a record.
+   * @param record the index of the record.
+   * @return the value of the key or null if the record has no key.
+   * @throws IllegalStateException if no key is indexed.
+   */
+  public String key(int record) {
+    return checkKeys()[record];
+  }
+
+  private String[] checkKeys() {
+    if (keys == null) {
+      throw new IllegalStateException("no key is indexed");
+    }
+    return keys;
+  }
+
+  /**
+   * Returns an index of the records from {@code from} included to {@code to} excluded.
+   * @param from the index of the first record.
+   * @param to the index after the last record.
+   * @return a new index.
+   */
+  public JSONIndex range(int from, int to) {
+    if (from < 0 || to > positions.length || from > to) {
+      throw new IndexOutOfBoundsException("from " + from + " to " + to);
+    }
+    return new JSONIndex(inputSize,
+        Arrays.copyOfRange(positions, from, to),
+        Arrays.copyOfRange(lengths, from, to),
+        (keys == null)? null: Arrays.copyOfRange(keys, from, to));
+  }
+
+  /**
+   * Returns an index of the records which key has the value, in the order of the file.
+   * The table of the keys is created by the first lookup.
+   *
+   * @param value the value of the key.
+   * @return a new index, empty if no record has the value.
+   * @throws IllegalStateException if no key is indexed.
+   */
+  public JSONIndex lookup(String value) {
+    Objects.requireNonNull(value);
+    String[] keys = checkKeys();
+    int[] nextRecords;
+    Integer first;
+    synchronized(this) {
+      if (firstRecords == null) {
+        HashMap<String, Integer> firstRecords = new HashMap<>();
+        nextRecords = new int[keys.length];
+        for(int i = keys.length; --i >= 0;) {
+          String key = keys[i];
+          Integer next = (key == null)? null: firstRecords.put(key, i);
+          nextRecords[i] = (next == null)? -1: next;
+        }
+        this.firstRecords = firstRecords;
+        this.nextRecords = nextRecords;
+      }
+      nextRecords = this.nextRecords;
+      first = firstRecords.get(value);
+    }
+    int count = 0;
+    for(int i = (first == null)? -1: first; i != -1; i = nextRecords[i]) {
+      count++;
+    }
+    long[] positions = new long[count];
+    int[] lengths = new int[count];
+    String[] values = new String[count];
+    count = 0;
+    for(int i = (first == null)? -1: first; i != -1; i = nextRecords[i]) {
+      positions[count] = this.positions[i];
+      lengths[count] = this.lengths[i];
+      values[count] = value;
+      count++;
+    }
+    return new JSONIndex(inputSize, positions, lengths, values);
+  }
+
+  /**
+   * Saves the index in a file.
+   * @param path the path of the index file.
+   * @throws IOException if an IO error occurs.
+   *
+   * @see #load(Path)
+   */
+  public void save(Path path) throws IOException {
+    try(DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+      output.writeInt(MAGIC);
+      output.writeInt(VERSION);
+      output.writeLong(inputSize);
+      output.writeInt(positions.length);
+      output.writeBoolean(keys != null);
+      for(int i = 0; i < positions.length; i++) {
+        output.writeLong(positions[i]);
+        output.writeInt(lengths[i]);
+        if (keys != null) {
+          String key = keys[i];
+          output.writeBoolean(key != null);
+          if (key != null) {
+            byte[] bytes = key.getBytes(UTF_8);  // writeUTF is limited to 65535 bytes
+            output.writeInt(bytes.length);
+            output.write(bytes);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Loads an index saved by {@link #save(Path)}.
+   * @param path the path of the index file.
+   * @return the index.
+   * @throws IOException if an IO error occurs or if the file is not an index.
+   */
+  public static JSONIndex load(Path path) throws IOException {
+    try(DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+      if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+        throw new IOException(path + " is not an index");
+      }
+      long inputSize = input.readLong();
+      int count = input.readInt();
+      boolean keyed = input.readBoolean();
+      long[] positions = new long[count];
+      int[] lengths = new int[count];
+      String[] keys = keyed? new String[count]: null;
+      for(int i = 0; i < count; i++) {
+        positions[i] = input.readLong();
+        lengths[i] = input.readInt();
+        if (keyed && input.readBoolean()) {
+          byte[] bytes = new byte[input.readInt()];
+          input.readFully(bytes);
+          keys[i] = new String(bytes, UTF_8);
+        }
+      }
+      return new JSONIndex(inputSize, positions, lengths, keys);
+    }
+  }
+}
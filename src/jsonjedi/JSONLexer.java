@@ -0,0 +1,983 @@
+package jsonjedi;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+
+/**
+ * A pull tokenizer of UTF-8 encoded JSON.
+ *
+ * The lexer works on a byte buffer that is refilled from a {@link Source}
+ * each time all its bytes are consumed, a token can span several refills.
+ * The value of the current token is kept unboxed in the lexer,
+ * strings are only decoded when {@link #stringValue()} is called.
+ */
+final class JSONLexer {
+  enum Token {
+    BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY, COLON, COMMA,
+    STRING, NUMBER, TRUE, FALSE, NULL, EOF
+  }
+
+  /**
+   * Provides the bytes of the input.
+   */
+  interface Source {
+    /**
+     * Reads at most {@code length} bytes into {@code buffer} at {@code offset}.
+     * @return the number of bytes read or -1 at the end of the input.
+     */
+    int read(byte[] buffer, int offset, int length) throws IOException;
+  }
+
+  /**
+   * Receives the chunks of a string read by {@link JSONLexer#readString(byte[], ChunkSink)}.
+   */
+  interface ChunkSink {
+    /**
+     * Receives the {@code length} first bytes of the chunk.
+     * @return the number of bytes at the end of the chunk that are not consumed,
+     *         they are moved at the start of the chunk before the next bytes.
+     */
+    int accept(byte[] chunk, int length, boolean last) throws IOException;
+  }
+
+  static final int BUFFER_SIZE = 8192;
+
+  private final Source source;
+  private byte[] buffer;
+  private int position;
+  private int limit;
+  private int mark;       // start of the current token, bytes before can be discarded
+  private long base;      // offset of buffer[0] from the start of the input
+
+  // value of the current token
+  private int start, end;  // bounds of the current string, quotes excluded
+  private boolean escaped; // true if the current string contains escape sequences
+  private boolean integral;
+  private long longValue;
+  private double doubleValue;
+
+  private byte[] scratch = new byte[64];
+  private boolean capturing;  // the bytes from the mark are kept by refill
+
+  // when reading lines, the limit is the end of the current line
+  private int lineEnd = -1;  // -1 if not reading lines
+  private int inputLimit;
+
+  JSONLexer(Source source) {
+    this(source, 0);
+  }
+
+  // base is the offset of the first byte of the source in the input
+  JSONLexer(Source source, long base) {
+    this.source = source;
+    this.buffer = new byte[BUFFER_SIZE];
+    this.base = base;
+  }
+
+  // the array is used as buffer, it's never modified,
+  // the input starts at origin, the lexer reads from start to end
+  JSONLexer(byte[] array, long origin, int start, int end) {
+    this.source = null;
+    this.buffer = array;
+    this.position = this.mark = start;
+    this.limit = end;
+    this.base = -origin;
+  }
+
+  // reads another array in place, the offsets are relative to the offset in the array,
+  // used to parse a document after another with the same lexer
+  void reset(byte[] array, int offset, int length) {
+    buffer = array;
+    position = mark = offset;
+    limit = offset + length;
+    base = -offset;
+    lineEnd = -1;
+    capturing = false;
+  }
+
+  /**
+   * Returns the offset in bytes of the current token from the start of the input.
+   * @return the offset in bytes of the current token from the start of the input.
+   */
+  long offset() {
+    return base + mark;
+  }
+
+  /**
+   * Returns the offset in bytes of the next byte to read from the start of the input.
+   * @return the offset in bytes of the next byte to read from the start of the input.
+   */
+  long position() {
+    return base + position;
+  }
+
+  JSONParseException error(String message) {
+    return new JSONParseException(message, base + position);
+  }
+
+  // reads more bytes, the bytes of the current token are kept
+  private boolean fill() throws IOException {
+    if (source == null || lineEnd != -1) {
+      return false;
+    }
+    int mark = this.mark;
+    if (mark != 0) {
+      System.arraycopy(buffer, mark, buffer, 0, limit - mark);
+      position -= mark;
+      limit -= mark;
+      start -= mark;
+      end -= mark;
+      base += mark;
+      this.mark = 0;
+    }
+    if (buffer.length - limit < 16) {
+      buffer = Arrays.copyOf(buffer, buffer.length << 1);
+    }
+    int read = source.read(buffer, limit, buffer.length - limit);
+    if (read == -1) {
+      return false;
+    }
+    limit += read;
+    return true;
+  }
+
+  Token nextToken() throws IOException {
+    byte[] buffer = this.buffer;
+    int i = position;
+    int limit = this.limit;
+    byte b;
+    for(;;) {
+      if (i == limit) {
+        position = mark = i;
+        if (!fill()) {
+          return Token.EOF;
+        }
+        buffer = this.buffer;
+        i = position;
+        limit = this.limit;
+      }
+      b = buffer[i];
+      if (b != ' ' && b != '\n' && b != '\r' && b != '\t') {
+        break;
+      }
+      i++;
+    }
+    mark = i;
+    position = i + 1;
+    switch(b) {
+    case '{':
+      return Token.BEGIN_OBJECT;
+    case '}':
+      return Token.END_OBJECT;
+    case '[':
+      return Token.BEGIN_ARRAY;
+    case ']':
+      return Token.END_ARRAY;
+    case ':':
+      return Token.COLON;
+    case ',':
+      return Token.COMMA;
+    case '"':
+      scanString();
+      return Token.STRING;
+    case '-': case '0': case '1': case '2': case '3': case '4':
+    case '5': case '6': case '7': case '8': case '9':
+      scanNumber();
+      return Token.NUMBER;
+    case 't':
+      scanLiteral(TRUE);
+      return Token.TRUE;
+    case 'f':
+      scanLiteral(FALSE);
+      return Token.FALSE;
+    case 'n':
+      scanLiteral(NULL);
+      return Token.NULL;
+    default:
+      position = i;
+      throw error("unexpected character '" + (char)(b & 0xff) + "'");
+    }
+  }
+
+  // reads more bytes without keeping the bytes before i, unless a value is captured,
+  // returns the new value of i or -1 at the end of the input
+  private int refill(int i) throws IOException {
+    position = i;
+    if (!capturing) {
+      mark = i;
+    }
+    if (!fill()) {
+      return -1;
+    }
+    return position;
+  }
+
+  /**
+   * Skips the next value without tokenizing it.
+   * Only quotes, escapes and brackets are recognized, so the content of
+   * the skipped value is not validated.
+   */
+  void skipValue() throws IOException {
+    skip(0);
+  }
+
+  /**
+   * Skips the next value like {@link #skipValue()} but keeps its bytes in the buffer.
+   * @return a view of the bytes of the value, valid until the next token is read.
+   */
+  JSONRawValue captureValue() throws IOException {
+    byte[] buffer = this.buffer;
+    int i = position;
+    int limit = this.limit;
+    for(;;) {
+      if (i == limit) {
+        position = mark = i;
+        if (!fill()) {
+          throw error("unexpected end of input");
+        }
+        buffer = this.buffer;
+        i = position;
+        limit = this.limit;
+      }
+      byte b = buffer[i];
+      if (b != ' ' && b != '\n' && b != '\r' && b != '\t') {
+        break;
+      }
+      i++;
+    }
+    position = mark = i;
+    capturing = true;
+    try {
+      skip(0);
+    } finally {
+      capturing = false;
+    }
+    return new JSONRawValue(this.buffer, mark, position - mark, base + mark);
+  }
+
+  /**
+   * Skips the blanks before the next token, if it is a string, its opening quote is read.
+   * @return true if the next token is a string, which can be read by {@link #readString(byte[], ChunkSink)},
+   *         false otherwise, the token is then read by {@link #nextToken()}.
+   */
+  boolean nextIsString() throws IOException {
+    byte[] buffer = this.buffer;
+    int i = position;
+    int limit = this.limit;
+    for(;;) {
+      if (i == limit) {
+        position = mark = i;
+        if (!fill()) {
+          return false;
+        }
+        buffer = this.buffer;
+        i = position;
+        limit = this.limit;
+      }
+      byte b = buffer[i];
+      if (b != ' ' && b != '\n' && b != '\r' && b != '\t') {
+        position = mark = i;
+        if (b != '"') {
+          return false;
+        }
+        position = i + 1;
+        return true;
+      }
+      i++;
+    }
+  }
+
+  /**
+   * Reads the rest of a string after its opening quote without keeping it in the buffer,
+   * the unescaped bytes are copied in the chunk which is sent to the sink each time it is full
+   * and once at the end of the string.
+   */
+  void readString(byte[] chunk, ChunkSink sink) throws IOException {
+    byte[] buffer = this.buffer;
+    int i = position;
+    int limit = this.limit;
+    int length = 0;
+    for(;;) {
+      if (i == limit) {
+        if ((i = refill(i)) == -1) {
+          throw error("unterminated string");
+        }
+        buffer = this.buffer;
+        limit = this.limit;
+      }
+      int room = chunk.length - length;
+      if (room < 8) {  // an escape sequence is unescaped in at most 4 bytes
+        int kept = sink.accept(chunk, length, false);
+        System.arraycopy(chunk, length - kept, chunk, 0, kept);
+        length = kept;
+        room = chunk.length - length;
+      }
+      int end = Math.min(limit, i + room);
+      int j = i;
+      while(j < end) {
+        byte b = buffer[j];
+        if (b == '"' || b == '\\') {
+          break;
+        }
+        j++;
+      }
+      System.arraycopy(buffer, i, chunk, length, j - i);
+      length += j - i;
+      i = j;
+      if (i == end) {
+        continue;
+      }
+      if (buffer[i] == '"') {
+        position = i + 1;
+        sink.accept(chunk, length, true);
+        return;
+      }
+      if (chunk.length - length < 8) {  // flushed first
+        continue;
+      }
+
+      // an escape sequence, with the low surrogate of a unicode escape
+      position = mark = i;
+      while(this.limit - position < 12 && fill()) {
+        // the buffer is compacted, then filled
+      }
+      buffer = this.buffer;
+      i = position;
+      limit = this.limit;
+      int escapeLength = 2;
+      if (i + 1 < limit && buffer[i + 1] == 'u') {
+        escapeLength = (i + 12 <= limit && buffer[i + 6] == '\\' && buffer[i + 7] == 'u' &&
+            Character.isHighSurrogate((char)hex(buffer, i + 2)))? 12: 6;
+      }
+      if (i + escapeLength > limit) {
+        throw error("unterminated string");
+      }
+      start = i;
+      this.end = i + escapeLength;
+      int unescaped = unescape();
+      System.arraycopy(scratch, 0, chunk, length, unescaped);
+      length += unescaped;
+      i += escapeLength;
+    }
+  }
+
+  /**
+   * Skips the rest of {@code depth} enclosing arrays or objects
+   * or the next value if {@code depth} is zero.
+   */
+  void skip(int depth) throws IOException {
+    byte[] buffer = this.buffer;
+    int i = position;
+    int limit = this.limit;
+    for(;;) {
+      if (i == limit) {
+        if ((i = refill(i)) == -1) {
+          throw error("unexpected end of input");
+        }
+        buffer = this.buffer;
+        limit = this.limit;
+      }
+      switch(buffer[i++]) {
+      case '"':
+        for(;;) {
+          if (i == limit) {
+            if ((i = refill(i)) == -1) {
+              throw error("unterminated string");
+            }
+            buffer = this.buffer;
+            limit = this.limit;
+          }
+          byte b = buffer[i++];
+          if (b == '"') {
+            break;
+          }
+          if (b == '\\') {
+            if (i == limit) {
+              if ((i = refill(i)) == -1) {
+                throw error("unterminated string");
+              }
+              buffer = this.buffer;
+              limit = this.limit;
+            }
+            i++;
+          }
+        }
+        if (depth == 0) {
+          position = i;
+          return;
+        }
+        continue;
+      case '{':
+      case '[':
+        depth++;
+        continue;
+      case '}':
+      case ']':
+        if (--depth <= 0) {
+          position = i;
+          if (depth < 0) {
+            throw error("unexpected end of array or object");
+          }
+          return;
+        }
+        continue;
+      case ' ':
+      case '\t':
+      case '\n':
+      case '\r':
+      case ',':
+      case ':':
+        continue;
+      default:
+        if (depth == 0) {  // a number or a literal
+          for(;;) {
+            if (i == limit) {
+              if ((i = refill(i)) == -1) {
+                return;
+              }
+              buffer = this.buffer;
+              limit = this.limit;
+            }
+            byte b = buffer[i];
+            if (b == ',' || b == '}' || b == ']' || b == ' ' || b == '\n' || b == '\r' || b == '\t') {
+              position = i;
+              return;
+            }
+            i++;
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Moves to the next line, until the next call, the end of the line
+   * is seen as the end of the input.
+   * @return false if there is no more line.
+   */
+  boolean nextLine() throws IOException {
+    if (lineEnd != -1) {
+      limit = inputLimit;
+      position = (lineEnd < limit)? lineEnd + 1: lineEnd;  // skip the '\n'
+      lineEnd = -1;
+    }
+    byte[] buffer = this.buffer;
+    int i = mark = position;
+    int limit = this.limit;
+    for(;;) {
+      if (i == limit) {
+        position = i;
+        boolean filled = fill();
+        buffer = this.buffer;
+        i = position;
+        limit = this.limit;
+        if (!filled) {
+          if (i == mark) {
+            return false;
+          }
+          break;
+        }
+      }
+      if (buffer[i] == '\n') {
+        break;
+      }
+      i++;
+    }
+    inputLimit = this.limit;
+    lineEnd = i;
+    this.limit = i;
+    position = mark;
+    return true;
+  }
+
+  /**
+   * Moves to the bytes between the offsets {@code start} and {@code end} from the start
+   * of the input, until the next call, they are seen as the whole input.
+   * The bytes before {@code start} are skipped, it must not be before the current position.
+   * @return false if the input ends before {@code end}.
+   */
+  boolean nextRange(long start, long end) throws IOException {
+    if (lineEnd != -1) {
+      limit = inputLimit;
+      lineEnd = -1;
+    }
+    while (base + limit < start) {
+      position = mark = limit;
+      if (!fill()) {
+        return false;
+      }
+    }
+    position = mark = (int)(start - base);
+    while (base + limit < end) {
+      if (!fill()) {
+        return false;
+      }
+    }
+    inputLimit = limit;
+    lineEnd = limit = (int)(end - base);
+    return true;
+  }
+
+  /**
+   * Skips the bytes up to the next '\n' included.
+   * @return the offset of the byte following the '\n' or -1 if there is no '\n'.
+   */
+  long skipLine() throws IOException {
+    byte[] buffer = this.buffer;
+    int i = position;
+    int limit = this.limit;
+    for(;;) {
+      if (i == limit) {
+        if ((i = refill(i)) == -1) {
+          return -1;
+        }
+        buffer = this.buffer;
+        limit = this.limit;
+      }
+      if (buffer[i++] == '\n') {
+        position = i;
+        return base + i;
+      }
+    }
+  }
+
+  private static final byte[] TRUE = { 't', 'r', 'u', 'e' };
+  private static final byte[] FALSE = { 'f', 'a', 'l', 's', 'e' };
+  private static final byte[] NULL = { 'n', 'u', 'l', 'l' };
+
+  private void scanLiteral(byte[] literal) throws IOException {
+    while (limit - mark < literal.length) {
+      if (!fill()) {
+        throw error("unexpected end of input");
+      }
+    }
+    byte[] buffer = this.buffer;
+    int mark = this.mark;
+    for(int i = 1; i < literal.length; i++) {
+      if (buffer[mark + i] != literal[i]) {
+        position = mark + i;
+        throw error("invalid literal");
+      }
+    }
+    position = mark + literal.length;
+  }
+
+  private void scanString() throws IOException {
+    byte[] buffer = this.buffer;
+    int i = position;
+    int limit = this.limit;
+    boolean escaped = false;
+    for(;;) {
+      if (i == limit) {
+        position = i;
+        if (!fill()) {
+          throw error("unterminated string");
+        }
+        buffer = this.buffer;
+        i = position;
+        limit = this.limit;
+      }
+      byte b = buffer[i];
+      if (b == '"') {
+        break;
+      }
+      if (b == '\\') {
+        escaped = true;
+        if (++i == limit) {
+          position = i;
+          if (!fill()) {
+            throw error("unterminated string");
+          }
+          buffer = this.buffer;
+          i = position;
+          limit = this.limit;
+        }
+      }
+      i++;
+    }
+    this.escaped = escaped;
+    start = mark + 1;
+    end = i;
+    position = i + 1;
+  }
+
+  private static boolean isNumberPart(byte b) {
+    return (b >= '0' && b <= '9') || b == '.' || b == 'e' || b == 'E' || b == '-' || b == '+';
+  }
+
+  private void scanNumber() throws IOException {
+    int i = position;
+    for(;;) {
+      if (i == limit) {
+        position = i;
+        boolean filled = fill();
+        i = position;
+        if (!filled) {
+          break;
+        }
+      }
+      if (!isNumberPart(buffer[i])) {
+        break;
+      }
+      i++;
+    }
+    position = i;
+    parseNumber(mark, i);
+  }
+
+  private static final double[] POWERS_OF_TEN = {
+    1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+    1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+  };
+
+  private static boolean isDigit(byte b) {
+    return b >= '0' && b <= '9';
+  }
+
+  private void parseNumber(int from, int to) throws JSONParseException {
+    byte[] buffer = this.buffer;
+    int i = from;
+    boolean negative = buffer[i] == '-';
+    if (negative) {
+      i++;
+    }
+    long mantissa = 0;
+    int digits = 0;          // significant digits stored in the mantissa
+    int scale = 0;           // power of ten of the mantissa
+    boolean truncated = false;
+
+    int intStart = i;
+    for(; i < to && isDigit(buffer[i]); i++) {
+      if (digits < 18) {
+        mantissa = mantissa * 10 + (buffer[i] - '0');
+        if (mantissa != 0) {
+          digits++;
+        }
+      } else {
+        scale++;
+        truncated |= buffer[i] != '0';
+      }
+    }
+    if (i == intStart || (buffer[intStart] == '0' && i - intStart > 1)) {
+      throw error("invalid number");
+    }
+    boolean integral = true;
+    if (i < to && buffer[i] == '.') {
+      integral = false;
+      int fractionStart = ++i;
+      for(; i < to && isDigit(buffer[i]); i++) {
+        if (digits < 18) {
+          mantissa = mantissa * 10 + (buffer[i] - '0');
+          if (mantissa != 0) {
+            digits++;
+          }
+          scale--;
+        } else {
+          truncated |= buffer[i] != '0';
+        }
+      }
+      if (i == fractionStart) {
+        throw error("invalid number");
+      }
+    }
+    if (i < to && (buffer[i] == 'e' || buffer[i] == 'E')) {
+      integral = false;
+      i++;
+      boolean negativeExponent = false;
+      if (i < to && (buffer[i] == '-' || buffer[i] == '+')) {
+        negativeExponent = buffer[i] == '-';
+        i++;
+      }
+      int exponentStart = i;
+      int exponent = 0;
+      for(; i < to && isDigit(buffer[i]); i++) {
+        if (exponent < 10_000) {
+          exponent = exponent * 10 + (buffer[i] - '0');
+        }
+      }
+      if (i == exponentStart) {
+        throw error("invalid number");
+      }
+      scale += negativeExponent? -exponent: exponent;
+    }
+    if (i != to) {
+      throw error("invalid number");
+    }
+
+    this.integral = integral;
+    if (integral) {
+      if (scale == 0) {
+        longValue = negative? -mantissa: mantissa;
+        doubleValue = longValue;
+        return;
+      }
+      // more than 18 digits
+      String text = new String(buffer, from, to - from, ISO_8859_1);
+      try {
+        longValue = Long.parseLong(text);
+        doubleValue = longValue;
+      } catch(NumberFormatException e) {
+        this.integral = false;
+        doubleValue = Double.parseDouble(text);
+      }
+      return;
+    }
+    if (!truncated && mantissa < (1L << 53) && scale >= -22 && scale <= 22) {
+      double value = (scale < 0)? mantissa / POWERS_OF_TEN[-scale]: mantissa * POWERS_OF_TEN[scale];
+      doubleValue = negative? -value: value;
+      return;
+    }
+    doubleValue = Double.parseDouble(new String(buffer, from, to - from, ISO_8859_1));
+  }
+
+  /**
+   * Returns true if the current number has no fraction part and no exponent
+   * and fits in a long.
+   */
+  boolean isIntegral() {
+    return integral;
+  }
+
+  long longValue() {
+    return longValue;
+  }
+
+  double doubleValue() {
+    return doubleValue;
+  }
+
+  /**
+   * Decodes the current string token.
+   * @return a new string.
+   */
+  String stringValue() throws JSONParseException {
+    if (!escaped) {
+      return new String(buffer, start, end - start, UTF_8);
+    }
+    int length = unescape();
+    return new String(scratch, 0, length, UTF_8);
+  }
+
+  /**
+   * Decodes the current string token or returns an equal string of the cache.
+   */
+  String stringValue(StringCache cache) throws JSONParseException {
+    if (!escaped) {
+      return cache.get(buffer, start, end);
+    }
+    int length = unescape();
+    return cache.get(scratch, 0, length);
+  }
+
+  /**
+   * Returns the rule associated to the current string token by the matcher
+   * or null if the string is not a key of the matcher.
+   */
+  <R> R matchKey(KeyMatcher<R> matcher) throws JSONParseException {
+    if (!escaped) {
+      return matcher.match(buffer, start, end);
+    }
+    int length = unescape();
+    return matcher.match(scratch, 0, length);
+  }
+
+  // unescape the current string into scratch and returns the number of bytes
+  private int unescape() throws JSONParseException {
+    byte[] buffer = this.buffer;
+    int end = this.end;
+    byte[] scratch = this.scratch;
+    if (scratch.length < end - start) {  // unescaped bytes are never longer
+      scratch = this.scratch = new byte[Math.max(end - start, scratch.length << 1)];
+    }
+    int length = 0;
+    for(int i = start; i < end; i++) {
+      byte b = buffer[i];
+      if (b != '\\') {
+        scratch[length++] = b;
+        continue;
+      }
+      switch(buffer[++i]) {
+      case '"':
+      case '\\':
+      case '/':
+        scratch[length++] = buffer[i];
+        break;
+      case 'b':
+        scratch[length++] = '\b';
+        break;
+      case 'f':
+        scratch[length++] = '\f';
+        break;
+      case 'n':
+        scratch[length++] = '\n';
+        break;
+      case 'r':
+        scratch[length++] = '\r';
+        break;
+      case 't':
+        scratch[length++] = '\t';
+        break;
+      case 'u': {
+        if (i + 4 >= end) {
+          throw error("invalid unicode escape sequence");
+        }
+        int c = hex(buffer, i + 1);
+        i += 4;
+        if (Character.isHighSurrogate((char)c) &&
+            i + 6 < end && buffer[i + 1] == '\\' && buffer[i + 2] == 'u') {
+          int low = hex(buffer, i + 3);
+          if (Character.isLowSurrogate((char)low)) {
+            c = Character.toCodePoint((char)c, (char)low);
+            i += 6;
+          }
+        }
+        length = encodeUTF8(c, scratch, length);
+        break;
+      }
+      default:
+        throw error("invalid escape sequence");
+      }
+    }
+    return length;
+  }
+
+  private int hex(byte[] buffer, int offset) throws JSONParseException {
+    int value = 0;
+    for(int i = offset; i < offset + 4; i++) {
+      int digit = Character.digit(buffer[i], 16);
+      if (digit == -1) {
+        throw error("invalid unicode escape sequence");
+      }
+      value = value << 4 | digit;
+    }
+    return value;
+  }
+
+  static int encodeUTF8(int c, byte[] bytes, int offset) {
+    if (c < 0x80) {
+      bytes[offset++] = (byte)c;
+    } else if (c < 0x800) {
+      bytes[offset++] = (byte)(0xc0 | c >> 6);
+      bytes[offset++] = (byte)(0x80 | (c & 0x3f));
+    } else if (c < 0x10000) {
+      bytes[offset++] = (byte)(0xe0 | c >> 12);
+      bytes[offset++] = (byte)(0x80 | (c >> 6 & 0x3f));
+      bytes[offset++] = (byte)(0x80 | (c & 0x3f));
+    } else {
+      bytes[offset++] = (byte)(0xf0 | c >> 18);
+      bytes[offset++] = (byte)(0x80 | (c >> 12 & 0x3f));
+      bytes[offset++] = (byte)(0x80 | (c >> 6 & 0x3f));
+      bytes[offset++] = (byte)(0x80 | (c & 0x3f));
+    }
+    return offset;
+  }
+
+  void expect(Token expected) throws IOException {
+    Token token = nextToken();
+    if (token != expected) {
+      throw error("expect " + expected + " but found " + token);
+    }
+  }
+
+  /**
+   * Source that encodes the characters of a reader in UTF-8.
+   */
+  static final class ReaderSource implements Source {
+    private final Reader reader;
+    private final CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+    private final CharsetEncoder encoder = UTF_8.newEncoder().
+        onMalformedInput(CodingErrorAction.REPLACE).
+        onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private boolean endOfInput;
+
+    ReaderSource(Reader reader) {
+      this.reader = reader;
+      chars.limit(0);
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+      ByteBuffer out = ByteBuffer.wrap(buffer, offset, length);
+      for(;;) {
+        encoder.encode(chars, out, endOfInput);
+        int written = out.position() - offset;
+        if (written != 0) {
+          return written;
+        }
+        if (endOfInput) {
+          return -1;
+        }
+        chars.compact();
+        endOfInput = reader.read(chars) == -1;
+        chars.flip();
+      }
+    }
+  }
+
+  /**
+   * Source that copies the bytes of a buffer.
+   */
+  static final class ByteBufferSource implements Source {
+    private final ByteBuffer input;
+
+    ByteBufferSource(ByteBuffer input) {
+      this.input = input;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) {
+      int remaining = input.remaining();
+      if (remaining == 0) {
+        return -1;
+      }
+      int read = Math.min(length, remaining);
+      input.get(buffer, offset, read);
+      return read;
+    }
+  }
+
+  /**
+   * Source that maps a part of a file in memory, window by window.
+   */
+  static final class MappedFileSource implements Source {
+    private static final long WINDOW_SIZE = 1 << 30;
+
+    private final FileChannel channel;
+    private long position;
+    private final long end;
+    private MappedByteBuffer window;
+
+    MappedFileSource(FileChannel channel, long start, long end) {
+      this.channel = channel;
+      this.position = start;
+      this.end = end;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+      MappedByteBuffer window = this.window;
+      if (window == null || !window.hasRemaining()) {
+        if (position == end) {
+          return -1;
+        }
+        long size = Math.min(WINDOW_SIZE, end - position);
+        window = this.window = channel.map(MapMode.READ_ONLY, position, size);
+        position += size;
+      }
+      int read = Math.min(length, window.remaining());
+      window.get(buffer, offset, read);
+      return read;
+    }
+  }
+}
@@ -0,0 +1,34 @@
+package jsonjedi;
+
+import java.io.IOException;
+
+/**
+ * Signals that the JSON input is malformed.
+ *
+ * When raised while pumping objects from a stream, this exception is wrapped
+ * in an {@link java.io.IOError} like any other {@link IOException}.
+ */
+public class JSONParseException extends IOException {
+  private static final long serialVersionUID = 1L;
+
+  private final long offset;
+
+  /**
+   * Creates a parse exception.
+   *
+   * @param message the detail message.
+   * @param offset the offset in bytes of the error from the start of the input.
+   */
+  public JSONParseException(String message, long offset) {
+    super(message + " at offset " + offset);
+    this.offset = offset;
+  }
+
+  /**
+   * Returns the offset in bytes of the error from the start of the input.
+   * @return the offset in bytes of the error from the start of the input.
+   */
+  public long getOffset() {
+    return offset;
+  }
+}
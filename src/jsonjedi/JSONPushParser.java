@@ -0,0 +1,44 @@
+package jsonjedi;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A non blocking parser that is fed with chunks of UTF-8 encoded JSON as they
+ * arrive and sends the objects of the schema to a consumer as soon as they are complete.
+ * A chunk can end anywhere, even in the middle of a token.
+ * 
+ * The consumer is called by {@link #push(ByteBuffer)}, so a producer that waits
+ * for {@code push} to return before reading the next chunk is throttled by the consumer.
+ * Only the bytes of the incomplete object are kept between two chunks.
+ * 
+ * A push parser is not thread safe but can be fed by different threads one after the other.
+ * 
+ * @see JSONSchema#pushParser(java.util.function.Consumer)
+ */
+public interface JSONPushParser extends Closeable {
+  /**
+   * Parses the bytes between the position and the limit of the chunk
+   * and sends the completed objects to the consumer.
+   * The bytes are copied, so the chunk can be reused once this method returns,
+   * its position is set to its limit.
+   * 
+   * If the bytes are malformed, a {@link JSONParseException} is raised
+   * and the parser can not be used anymore.
+   * 
+   * @param chunk the next bytes of the input.
+   * @throws IOException if the input is malformed.
+   * @throws IllegalStateException if the parser is closed.
+   */
+  public void push(ByteBuffer chunk) throws IOException;
+  
+  /**
+   * Signals the end of the input, sends the last objects to the consumer
+   * and checks that the input is complete.
+   * 
+   * @throws IOException if the input is malformed or incomplete.
+   */
+  @Override
+  public void close() throws IOException;
+}
@@ -0,0 +1,144 @@
+package jsonjedi;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+/**
+ * The UTF-8 bytes of a JSON value captured as is from the input,
+ * the value was not tokenized, only its strings and brackets were skipped,
+ * so its content is not validated.
+ *
+ * A raw value is a view of the buffer of the parser, it is only valid during
+ * the call of the consumer it is sent to, unless the input of the stream
+ * is a byte array which is not modified.
+ * Use {@link #copy()} to keep it longer.
+ *
+ * @see JSONSchemaBuilder#raw(String, java.util.function.BiConsumer)
+ */
+public final class JSONRawValue {
+  private final byte[] array;
+  private final int offset;
+  private final int length;
+  private final long position;
+
+  JSONRawValue(byte[] array, int offset, int length, long position) {
+    this.array = array;
+    this.offset = offset;
+    this.length = length;
+    this.position = position;
+  }
+
+  /**
+   * Returns the offset in bytes of the value from the start of the input.
+   * @return the offset in bytes of the value from the start of the input.
+   */
+  public long position() {
+    return position;
+  }
+
+  /**
+   * Returns the length in bytes of the value.
+   * @return the length in bytes of the value.
+   */
+  public int length() {
+    return length;
+  }
+
+  /**
+   * Returns a read-only buffer on the bytes of the value, the bytes are not copied.
+   * @return a read-only buffer on the bytes of the value.
+   */
+  public ByteBuffer asByteBuffer() {
+    return ByteBuffer.wrap(array, offset, length).slice().asReadOnlyBuffer();
+  }
+
+  /**
+   * Returns a copy of the bytes of the value.
+   * @return a copy of the bytes of the value.
+   */
+  public byte[] toByteArray() {
+    return Arrays.copyOfRange(array, offset, offset + length);
+  }
+
+  /**
+   * Returns a raw value with a copy of the bytes of the current value,
+   * which can be used after the call of the consumer.
+   * @return a copy of the current value.
+   */
+  public JSONRawValue copy() {
+    return new JSONRawValue(toByteArray(), 0, length, position);
+  }
+
+  /**
+   * Writes the bytes of the value to the output stream.
+   * @param output an output stream.
+   * @throws IOException if an IO error occurs.
+   */
+  public void writeTo(OutputStream output) throws IOException {
+    output.write(array, offset, length);
+  }
+
+  // used by the JSON writer
+  void writeTo(JSONWriter<?> writer) throws IOException {
+    writer.writeBytes(array, offset, length);
+  }
+
+  /**
+   * Returns a stream of the objects of the schema encoded in the value.
+   * The stream reads the bytes of the value lazily, so it must be consumed
+   * while the value is valid.
+   *
+   * @param schema the schema of the value.
+   * @return a stream of the objects of the schema.
+   *
+   * @see JSONSchema#stream(byte[], int, int)
+   */
+  public <T> Stream<T> parse(JSONSchema<T> schema) {
+    return schema.stream(array, offset, length);
+  }
+
+  /**
+   * Returns true if the bytes of the two values are equal.
+   */
+  @Override
+  public boolean equals(Object o) {
+    if (!(o instanceof JSONRawValue)) {
+      return false;
+    }
+    JSONRawValue value = (JSONRawValue)o;
+    if (length != value.length) {
+      return false;
+    }
+    for(int i = 0; i < length; i++) {
+      if (array[offset + i] != value.array[value.offset + i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns a hash of the bytes of the value.
+   */
+  @Override
+  public int hashCode() {
+    int hash = 1;
+    for(int i = offset; i < offset + length; i++) {
+      hash = hash * 31 + array[i];
+    }
+    return hash;
+  }
+
+  /**
+   * Returns the value decoded as a string.
+   */
+  @Override
+  public String toString() {
+    return new String(array, offset, length, UTF_8);
+  }
+}
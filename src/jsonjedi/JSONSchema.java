@@ -1,7 +1,13 @@
 package jsonjedi;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.Consumer;
 import java.util.stream.Stream;
 
 /**
@@ -9,7 +15,6 @@ import java.util.stream.Stream;
  * 
  * @param <T> type of the object in the stream.
  */
-@FunctionalInterface
 public interface JSONSchema<T> {
   /**
    * Returns a stream that if read will lazily provide the JSON objects
@@ -25,4 +30,272 @@ public interface JSONSchema<T> {
    *         the stream.
    */
   public Stream<T> stream(Reader reader) throws IOException;
+  
+  /**
+   * Returns a stream that if read will lazily provide the JSON objects
+   * encoded in UTF-8 in the file.
+   * The file is mapped in memory and read without decoding it to characters,
+   * only the strings consumed by the schema are decoded.
+   * The file is closed when the stream is closed.
+   * 
+   * @param path path of the file.
+   * @return a stream of objects corresponding to the current JSON schema.
+   * @throws IOException throws if the file can not be opened.
+   * 
+   * @see #stream(Reader)
+   */
+  public Stream<T> stream(Path path) throws IOException;
+  
+  /**
+   * Returns a stream that if read will lazily provide the JSON objects
+   * of the records of the index, read at their offset in the file
+   * without scanning the bytes between them.
+   * The file is mapped in memory and closed when the stream is closed.
+   * The stream is sized unless the schema has where rules,
+   * a parallel stream splits it by number of records.
+   * 
+   * @param path path of the file.
+   * @param index an index of the file or a part of it.
+   * @return a stream of objects corresponding to the current JSON schema.
+   * @throws IOException throws if the file can not be opened.
+   * @throws IllegalArgumentException if the size of the file is not
+   *         the size of the indexed file.
+   * 
+   * @see JSONIndex#build(Path)
+   * @see #stream(Path)
+   */
+  public Stream<T> stream(Path path, JSONIndex index) throws IOException;
+  
+  /**
+   * Returns a stream that if read will lazily provide the JSON objects
+   * encoded in UTF-8 between the position and the limit of the buffer.
+   * The position of the buffer is not changed.
+   * 
+   * @param buffer a buffer containing UTF-8 encoded JSON.
+   * @return a stream of objects corresponding to the current JSON schema.
+   * 
+   * @see #stream(Reader)
+   */
+  public Stream<T> stream(ByteBuffer buffer);
+  
+  /**
+   * Returns a stream that if read will lazily provide the JSON objects
+   * encoded in UTF-8 in the {@code length} bytes of the array
+   * starting at {@code offset}.
+   * The array is read in place, so it should not be modified while
+   * the stream is read.
+   * 
+   * @param array an array containing UTF-8 encoded JSON.
+   * @param offset offset of the first byte of the JSON in the array.
+   * @param length length in bytes of the JSON. 
+   * @return a stream of objects corresponding to the current JSON schema.
+   * 
+   * @see #stream(Reader)
+   */
+  public Stream<T> stream(byte[] array, int offset, int length);
+
+  /**
+   * Parses a single JSON object encoded in UTF-8 in the {@code length} bytes
+   * of the array starting at {@code offset}, a small message for example.
+   * Unlike a stream, a call allocates nothing but the objects of the schema,
+   * the lexer and the handler are created once per thread and reused by the next calls.
+   * The array is read in place, the raw values of the object are views of the array.
+   * The object is a new instance even if the schema reuses its instances.
+   * 
+   * @param array an array containing a UTF-8 encoded JSON object.
+   * @param offset offset of the first byte of the JSON in the array.
+   * @param length length in bytes of the JSON.
+   * @return the object or null if it is rejected by a where rule.
+   * @throws JSONParseException if the JSON is malformed or is not an object.
+   * @throws UnsupportedOperationException if the schema is columnar.
+   * 
+   * @see #stream(byte[], int, int)
+   */
+  public T parse(byte[] array, int offset, int length) throws JSONParseException;
+  
+  /**
+   * Parses a single JSON object from a text.
+   * The text is encoded in a buffer of the thread which is reused by the next calls,
+   * so the raw values of the object are only valid until the next call of the thread.
+   * 
+   * @param text a text containing a JSON object.
+   * @return the object or null if it is rejected by a where rule.
+   * @throws JSONParseException if the JSON is malformed or is not an object.
+   * @throws IllegalArgumentException if the text encoded in UTF-8 does not fit in an array.
+   * @throws UnsupportedOperationException if the schema is columnar.
+   * 
+   * @see #parse(byte[], int, int)
+   */
+  public T parse(CharSequence text) throws JSONParseException;
+  
+  /**
+   * Returns a stream that if read will lazily provide the JSON objects
+   * encoded in the reader as JSON lines (newline delimited JSON),
+   * each non blank line being an object of the current JSON schema.
+   * 
+   * If a line is malformed, an {@link java.io.IOError} is raised unless
+   * the schema was created by {@link #skipMalformedLines(Consumer)}.
+   * 
+   * @param reader input stream reader
+   * @return a stream of objects corresponding to the current JSON schema.
+   * @throws IOException throws if an IO error occurs when creating
+   *         the stream.
+   *         
+   * @see #stream(Reader)
+   */
+  public Stream<T> streamLines(Reader reader) throws IOException;
+  
+  /**
+   * Returns a stream that if read will lazily provide the JSON objects
+   * encoded in UTF-8 in the file as JSON lines (newline delimited JSON).
+   * The file is mapped in memory and closed when the stream is closed,
+   * a parallel stream splits the file at line boundaries.
+   * 
+   * @param path path of the file.
+   * @return a stream of objects corresponding to the current JSON schema.
+   * @throws IOException throws if the file can not be opened.
+   * 
+   * @see #streamLines(Reader)
+   * @see #stream(Path)
+   */
+  public Stream<T> streamLines(Path path) throws IOException;
+  
+  /**
+   * Returns a stream that if read will lazily provide the JSON objects
+   * encoded in UTF-8 as JSON lines (newline delimited JSON) between
+   * the position and the limit of the buffer.
+   * 
+   * @param buffer a buffer containing UTF-8 encoded JSON lines.
+   * @return a stream of objects corresponding to the current JSON schema.
+   * 
+   * @see #streamLines(Reader)
+   * @see #stream(ByteBuffer)
+   */
+  public Stream<T> streamLines(ByteBuffer buffer);
+  
+  /**
+   * Returns a stream that if read will lazily provide the JSON objects
+   * encoded in UTF-8 as JSON lines (newline delimited JSON) in the
+   * {@code length} bytes of the array starting at {@code offset}.
+   * 
+   * @param array an array containing UTF-8 encoded JSON lines.
+   * @param offset offset of the first byte of the JSON lines in the array.
+   * @param length length in bytes of the JSON lines. 
+   * @return a stream of objects corresponding to the current JSON schema.
+   * 
+   * @see #streamLines(Reader)
+   * @see #stream(byte[], int, int)
+   */
+  public Stream<T> streamLines(byte[] array, int offset, int length);
+  
+  /**
+   * Returns a push parser that parses the chunks of UTF-8 encoded JSON
+   * it is fed with and sends the objects of the current schema to the consumer.
+   * The JSON is either an object or an array of objects as for {@link #stream(Reader)}.
+   * 
+   * @param consumer a consumer called with each object.
+   * @return a new push parser.
+   */
+  public JSONPushParser pushParser(Consumer<? super T> consumer);
+  
+  /**
+   * Returns a push parser that parses the chunks of UTF-8 encoded JSON lines
+   * (newline delimited JSON) it is fed with and sends the objects of the current
+   * schema to the consumer.
+   * The malformed lines are handled as for {@link #streamLines(Reader)}.
+   * 
+   * @param consumer a consumer called with each object.
+   * @return a new push parser.
+   * 
+   * @see #pushParser(Consumer)
+   */
+  public JSONPushParser pushLinesParser(Consumer<? super T> consumer);
+  
+  /**
+   * Returns a writer that writes the objects of the current schema
+   * as UTF-8 encoded JSON to the output stream.
+   * 
+   * @param output the output stream.
+   * @return a new writer.
+   * 
+   * @see JSONSchemaBuilder#getter(String, java.util.function.Function)
+   */
+  public JSONWriter<T> writer(OutputStream output);
+  
+  /**
+   * Returns a writer that writes the objects of the current schema
+   * as JSON to the writer.
+   * 
+   * @param writer the writer.
+   * @return a new writer.
+   * 
+   * @see #writer(OutputStream)
+   */
+  public JSONWriter<T> writer(Writer writer);
+  
+  /**
+   * Returns a schema similar to the current schema that reports the malformed
+   * lines of the streams created by {@code streamLines} to the error handler
+   * and skips them instead of raising an {@link java.io.IOError}.
+   * 
+   * @param errorHandler a consumer called with the error of each malformed line.
+   * @return a new schema.
+   */
+  public JSONSchema<T> skipMalformedLines(Consumer<? super JSONParseException> errorHandler);
+
+  /**
+   * Returns a schema similar to the current schema which streams update
+   * the statistics and emit the JFR events {@code jsonjedi.Stream}
+   * and {@code jsonjedi.Entry}.
+   * The streams of the current schema are not instrumented.
+   * The documents read by {@link #parse(byte[], int, int)} update the bytes, objects,
+   * discarded keys and times of the statistics but are not counted as streams
+   * and emit no {@code jsonjedi.Stream} event.
+   * The callback time is the time spent in the consumers of the values, of the entries
+   * and of the stream or of the push parser, the time between two pushes is not counted.
+   *
+   * @param statistics the statistics updated by the streams, several schemas
+   *        can share the same statistics.
+   * @return a new schema.
+   */
+  public JSONSchema<T> monitor(JSONSchemaStatistics statistics);
+
+  /**
+   * Returns a schema similar to the current schema which streams read and bind
+   * the objects ahead in a producer thread, the objects are handed over
+   * to the thread of the stream in batches.
+   * The producer thread is started when the stream is first traversed
+   * and ends with the input or when the stream is closed.
+   * A stream which is not fully traversed, by a short-circuiting operation
+   * like {@code findFirst()} or {@code anyMatch()}, must be closed, usually with
+   * a try-with-resources, otherwise the producer thread stays blocked
+   * once it has filled its batches.
+   * The streams are not split when run in parallel.
+   * The push parsers of the schema are not changed.
+   *
+   * @param threadFactory the factory of the producer threads,
+   *        for example a factory of virtual threads.
+   * @return a new schema.
+   * @throws IllegalStateException if the instances of the schema are reused.
+   */
+  public JSONSchema<T> pipelined(ThreadFactory threadFactory);
+
+  /**
+   * Returns a schema similar to the current schema which streams and push parsers
+   * reuse the same instance for all the top level objects, and for all the objects
+   * of an entry sent as a stream or selected by a path, instead of creating a new one
+   * for each object. Before being filled again, the declared fields of an instance
+   * that are not static nor final, transient fields included, are reset to their default value.
+   * The objects must not be retained once the consumer returns, so this mode is for
+   * consumers like {@code forEach} that only read them;
+   * the objects accumulated by a collector and the objects created by a constructor
+   * with parameters are never reused. The objects returned by {@link #parse(byte[], int, int)}
+   * are not reused either.
+   * Each split of a parallel stream has its own instances,
+   * the streams of the schema are not {@link java.util.Spliterator#DISTINCT distinct}.
+   *
+   * @return a new schema.
+   * @throws IllegalStateException if the schema is pipelined.
+   */
+  public JSONSchema<T> reuseInstances();
 }
@@ -2,36 +2,61 @@ package jsonjedi;
 
 import static java.lang.invoke.MethodType.*;
 import static java.lang.invoke.MethodHandles.*;
+import static java.nio.charset.StandardCharsets.UTF_8;
 
 import java.io.BufferedReader;
 import java.io.IOError;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Reader;
+import java.io.Writer;
 import java.lang.invoke.MethodHandle;
 import java.lang.invoke.MethodHandles;
 import java.lang.invoke.MethodHandles.Lookup;
 import java.lang.invoke.MethodType;
 import java.lang.reflect.Constructor;
-import java.lang.reflect.Field;
+import java.lang.reflect.Type;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Spliterator;
+import java.util.concurrent.ThreadFactory;
 import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
 import java.util.function.Consumer;
+import java.util.function.DoublePredicate;
+import java.util.function.Function;
+import java.util.function.IntPredicate;
+import java.util.function.LongPredicate;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collector;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
-import java.util.stream.Streams;
+import java.util.stream.StreamSupport;
 
-import org.json.simple.parser.ContentHandler;
-import org.json.simple.parser.JSONParser;
-import org.json.simple.parser.ParseException;
+import jsonjedi.JSONLexer.Token;
 
 /**
  * Build a structured description (schema) of a JSON.
@@ -77,319 +102,2524 @@ public class JSONSchemaBuilder<T> {
     void accept(T element, double value);
   }
 
+  /**
+   * Consumer that takes an element of type T and a chunk of a value.
+   *
+   * @param <T> type of the element.
+   * @param <B> type of the chunk, {@link ByteBuffer} or {@link CharBuffer}.
+   *
+   * @see JSONSchemaBuilder#chunkedValue(String, Class, ChunkConsumer)
+   */
+  public interface ChunkConsumer<T, B> {
+    /**
+     * Receives the next chunk of a value.
+     *
+     * @param element the element.
+     * @param chunk the chunk, only valid during the call.
+     * @param last true if it is the last chunk of the value.
+     */
+    void accept(T element, B chunk, boolean last);
+  }
+
   private final Lookup lookup;
-  private final Class<T> type;
-  final MethodHandle constructor;
-  final HashMap<String, Object> ruleMap = new HashMap<>();  
+  final Class<T> type;
+  private final ClassBinding binding;
+  private String[] constructorKeys;  // the keys of the parameters of the constructor or null
+  MethodHandle constructor;     // initialized by freeze(), the no-arg constructor of type ()Object or null
+  MethodHandle creator;         // initialized by freeze(), creates the object from its slots, of type (Object)Object or null
+  int slotCount;                // initialized by freeze()
+  int instanceIndex = -1;       // initialized by indexInstances(), the index of the reused instance in a handler or -1
+  int instanceCount;            // initialized by schema(), the number of reused instances of the tree of builders
+  final HashMap<String, Rule> ruleMap = new HashMap<>();  
+  KeyMatcher<Rule> keyMatcher;  // initialized by freeze()
+  private final LinkedHashMap<String, MethodHandle> getterMap = new LinkedHashMap<>();
+  Property[] properties;        // initialized by freeze()
   private final BiConsumer<Object, Stream<T>> streamConsumer;
   private boolean allowImplicit = true;
+  private final PathTree paths = new PathTree();
+  private final LinkedHashMap<String, WhereRule> whereMap = new LinkedHashMap<>();
+  long whereMask;               // initialized by freeze(), the bits of all the where rules
+  Rule otherRule;               // initialized by freeze(), the rule of the keys selected by a wildcard path or null
+  private StringCache strings;  // canonicalizes the strings of all the keys or null
+  private final HashMap<String, StringCache> stringsMap = new HashMap<>();  // canonicalizes the strings of a key
+  private final LinkedHashMap<String, Class<?>> columnTypes;  // the columns of a columnar schema or null
+  private final int batchSize;       // the number of rows of the batches of a columnar schema
+  JSONColumns.Layout columnLayout;  // initialized by freeze(), null if the schema is not columnar
 
   JSONSchemaBuilder(Lookup lookup, Class<T> type, BiConsumer<Object, Stream<T>> streamConsumer) {
+    this(lookup, type, streamConsumer, null, 0);
+  }
+
+  private JSONSchemaBuilder(Lookup lookup, Class<T> type, BiConsumer<Object, Stream<T>> streamConsumer,
+                            LinkedHashMap<String, Class<?>> columnTypes, int batchSize) {
     this.lookup = lookup;
     this.type = type;
-    this.constructor = getConstructor(lookup, type);
+    this.binding = ClassBinding.of(lookup, type);
     this.streamConsumer = streamConsumer;
+    this.columnTypes = columnTypes;
+    this.batchSize = batchSize;
   }
 
   // Context's state of the JSON handler
   enum ContextState {
-    NONE,
-    START_STREAM,
-    END_STREAM,
-    PUBLISH,
-    DISCARD
+    NONE,         // the value of the stream is not read yet
+    ARRAY_START,  // just after a '[', expect an element or a ']'
+    ARRAY_NEXT,   // just after an element, expect a ',' or a ']'
+    END_STREAM
   }
   
-  static class Context {
+  // a rule binds the value of an entry to the current object,
+  // the value rules are specialized by type so binding a primitive value never boxes it
+  static abstract class Rule {
+    /**
+     * Reads the value of an entry from the handler and binds it to the object.
+     */
+    abstract void bind(Handler handler, Object object) throws IOException;
+  }
+
+  // an entry which objects are described by a builder
+  static abstract class EntryRule extends Rule {
+    final String key;
     final JSONSchemaBuilder<?> builder;
-    Object object;
-    ContextState state;
 
-    Context(JSONSchemaBuilder<?> builder, ContextState state) {
+    EntryRule(String key, JSONSchemaBuilder<?> builder) {
+      this.key = key;
       this.builder = builder;
-      this.state = state;
     }
-    
+
+    @Override
+    final void bind(Handler handler, Object object) throws IOException {
+      handler.bindEntry(this, object);
+    }
+
+    // parses the objects of the entry and sends them to the user code
+    abstract void bindObjects(Handler handler, Object object) throws IOException;
+
     @Override
     public String toString() {
-      return super.toString() + " " + builder.toString() + " " + Objects.toString(object) +
-          " state: " + state;
+      return "entry " + builder;
     }
   }
 
-  // this context is used to tell the JSON Handler to discard
-  static final Context DISCARD_CONTEXT = new Context(null, ContextState.DISCARD);
+  // the objects of the entry are sent as a stream
+  static final class StreamEntryRule extends EntryRule {
+    StreamEntryRule(String key, JSONSchemaBuilder<?> builder) {
+      super(key, builder);
+    }
 
-  static class JSONSpliterator<T> implements Spliterator<T> {
-    private final Handler handler;
-    private final Context context;
+    @Override
+    void bindObjects(Handler handler, Object object) throws IOException {
+      Context context = new Context(builder, ContextState.NONE);
+      builder.createAndSendStream(handler, object, context);
 
-    JSONSpliterator(Handler handler, Context context) {
-      this.handler = handler;
-      this.context = context;
+      // discard the objects not consumed by the stream
+      handler.skipStream(context);
+    }
+  }
+
+  // the objects of the entry are accumulated by a collector, no stream is created
+  static final class CollectorEntryRule extends EntryRule {
+    private final Supplier<Object> supplier;
+    private final BiConsumer<Object, Object> accumulator;
+    private final Function<Object, Object> finisher;
+    private final BiConsumer<Object, Object> resultConsumer;
+
+    // the result consumer is null if the result is a parameter of the constructor
+    @SuppressWarnings("unchecked")
+    CollectorEntryRule(String key, JSONSchemaBuilder<?> builder, Collector<?, ?, ?> collector, BiConsumer<?, ?> resultConsumer) {
+      super(key, builder);
+      this.supplier = (Supplier<Object>)collector.supplier();
+      this.accumulator = (BiConsumer<Object, Object>)collector.accumulator();
+      this.finisher = (Function<Object, Object>)collector.finisher();
+      this.resultConsumer = (BiConsumer<Object, Object>)resultConsumer;
     }
 
-    @Override
-    public int characteristics() {
-      return DISTINCT|ORDERED|NONNULL;
+    private CollectorEntryRule(CollectorEntryRule rule, BiConsumer<Object, Object> resultConsumer) {
+      super(rule.key, rule.builder);
+      this.supplier = rule.supplier;
+      this.accumulator = rule.accumulator;
+      this.finisher = rule.finisher;
+      this.resultConsumer = resultConsumer;
+    }
+
+    boolean isParameter() {
+      return resultConsumer == null;
+    }
+
+    CollectorEntryRule withResultConsumer(BiConsumer<Object, Object> resultConsumer) {
+      return new CollectorEntryRule(this, resultConsumer);
     }
 
     @Override
+    void bindObjects(Handler handler, Object object) throws IOException {
+      Object container = supplier.get();
+      Context context = new Context(builder, ContextState.NONE);
+      while(handler.next(context)) {
+        accumulator.accept(container, context.object);
+        context.object = null;
+      }
+      resultConsumer.accept(object, finisher.apply(container));
+    }
+  }
+
+  // each object of the entry is sent to the user code
+  static final class ConsumerEntryRule extends EntryRule {
+    private final BiConsumer<Object, Object> consumer;
+
     @SuppressWarnings("unchecked")
-    public boolean tryAdvance(Consumer<? super T> consumer) {
-      do {
-        try {
-          handler.push();
-        } catch (IOException | ParseException e) {
-          throw new IOError(e);
+    ConsumerEntryRule(String key, JSONSchemaBuilder<?> builder, BiConsumer<?, ?> consumer) {
+      super(key, builder);
+      this.consumer = (BiConsumer<Object, Object>)consumer;
+    }
+
+    @Override
+    void bindObjects(Handler handler, Object object) throws IOException {
+      Context context = new Context(builder, ContextState.NONE);
+      while(handler.next(context)) {
+        consumer.accept(object, context.object);
+        context.object = null;
+      }
+    }
+  }
+
+  // a node of the tree of the paths declared by a builder
+  static final class PathTree {
+    final HashMap<String, PathTree> children = new HashMap<>();
+    PathTree wildcard;  // the child of all the keys or null
+    Rule target;        // the rule of the value selected by the path that ends here or null
+
+    PathTree child(String key) {
+      if (key.equals("*")) {
+        return (wildcard == null)? wildcard = new PathTree(): wildcard;
+      }
+      return children.computeIfAbsent(key, k -> new PathTree());
+    }
+  }
+
+  // a state of the automaton compiled from the paths of a builder, it corresponds
+  // to the set of the nodes of the path tree that the current value can match;
+  // the values that can not match a path are skipped without being tokenized.
+  // The arrays are traversed, so the values selected in an array are all selected
+  static final class PathRule extends Rule {
+    private final KeyMatcher<PathRule> keyMatcher;
+    private final PathRule otherRule;  // the state of the other keys or null
+    private final Rule target;         // the rule of the value selected by a path or null
+
+    private PathRule(HashMap<String, PathRule> ruleMap, PathRule otherRule, Rule target) {
+      this.keyMatcher = new KeyMatcher<>(ruleMap);
+      this.otherRule = otherRule;
+      this.target = target;
+    }
+
+    // the transitions by key from the nodes, returns the transition of the other keys
+    static PathRule transitions(List<PathTree> nodes, HashMap<String, PathRule> ruleMap) {
+      HashMap<String, ArrayList<PathTree>> nextMap = new HashMap<>();
+      ArrayList<PathTree> wildcards = new ArrayList<>();
+      for(PathTree node: nodes) {
+        node.children.forEach((key, child) -> nextMap.computeIfAbsent(key, k -> new ArrayList<>()).add(child));
+        if (node.wildcard != null) {
+          wildcards.add(node.wildcard);
         }
+      }
+      nextMap.forEach((key, next) -> {
+        next.addAll(wildcards);
+        ruleMap.put(key, compile(next));
+      });
+      return wildcards.isEmpty()? null: compile(wildcards);
+    }
 
-        //System.out.println("push " + context + " " + context.object + " " + context.state);
+    private static PathRule compile(List<PathTree> nodes) {
+      Rule target = null;
+      boolean inner = false;
+      for(PathTree node: nodes) {
+        if (node.target != null) {
+          if (target != null) {
+            throw new IllegalStateException("several paths select the same value");
+          }
+          target = node.target;
+        }
+        inner |= node.wildcard != null || !node.children.isEmpty();
+      }
+      if (target != null) {
+        if (inner) {
+          throw new IllegalStateException("a path selects a value which contains the values selected by another path");
+        }
+        return new PathRule(new HashMap<>(), null, target);
+      }
+      HashMap<String, PathRule> ruleMap = new HashMap<>();
+      PathRule otherRule = transitions(nodes, ruleMap);
+      return new PathRule(ruleMap, otherRule, null);
+    }
 
-        if (context.state == ContextState.END_STREAM) {
-          return false;
-        }  
-      } while(context.state != ContextState.PUBLISH);
-      
-      consumer.accept((T)context.object);
-      context.state = ContextState.NONE;
-      return true;
+    @Override
+    void bind(Handler handler, Object object) throws IOException {
+      if (target != null) {
+        target.bind(handler, object);
+        return;
+      }
+      visit(handler, object, handler.lexer.nextToken());
+    }
+
+    private void visit(Handler handler, Object object, Token token) throws IOException {
+      JSONLexer lexer = handler.lexer;
+      switch(token) {
+      case BEGIN_OBJECT:
+        token = lexer.nextToken();
+        if (token == Token.END_OBJECT) {
+          return;
+        }
+        for(;;) {
+          if (token != Token.STRING) {
+            throw lexer.error("expect a key but found " + token);
+          }
+          PathRule rule = lexer.matchKey(keyMatcher);
+          lexer.expect(Token.COLON);
+          if (rule == null && (rule = otherRule) == null) {
+            handler.discardValue();
+          } else {
+            rule.bind(handler, object);
+          }
+          token = lexer.nextToken();
+          if (token == Token.END_OBJECT) {
+            return;
+          }
+          if (token != Token.COMMA) {
+            throw lexer.error("expect ',' or '}' but found " + token);
+          }
+          token = lexer.nextToken();
+        }
+      case BEGIN_ARRAY:
+        token = lexer.nextToken();
+        if (token == Token.END_ARRAY) {
+          return;
+        }
+        for(;;) {
+          visit(handler, object, token);
+          token = lexer.nextToken();
+          if (token == Token.END_ARRAY) {
+            return;
+          }
+          if (token != Token.COMMA) {
+            throw lexer.error("expect ',' or ']' but found " + token);
+          }
+          token = lexer.nextToken();
+        }
+      case STRING:
+      case NUMBER:
+      case TRUE:
+      case FALSE:
+      case NULL:
+        return;  // no value selected
+      default:
+        throw lexer.error("unexpected " + token);
+      }
     }
 
     @Override
-    public void forEach(Consumer<? super T> consumer) {
-      // this code is duplicated just to be faster
-      do {
-        // nothing
-      } while(tryAdvance(consumer));
+    public String toString() {
+      return (target != null)? target.toString(): "a path";
     }
   }
 
-  Stream<T> createAStream(Handler handler, Context context) {
-    return Streams.stream(new JSONSpliterator<T>(handler, context));
-  }
-  
-  void createAndSendStream(Handler handler, Object object, Context context) {
-    streamConsumer.accept(object, createAStream(handler, context));
+  // the bytes of the value are sent to the user code without being parsed
+  static final class RawRule extends Rule {
+    private final BiConsumer<Object, JSONRawValue> rawConsumer;
+
+    @SuppressWarnings("unchecked")
+    RawRule(BiConsumer<?, ? super JSONRawValue> rawConsumer) {
+      this.rawConsumer = (BiConsumer<Object, JSONRawValue>)rawConsumer;
+    }
+
+    @Override
+    void bind(Handler handler, Object object) throws IOException {
+      rawConsumer.accept(object, handler.lexer.captureValue());
+    }
+
+    @Override
+    public String toString() {
+      return "a raw value";
+    }
   }
 
-  static class Handler implements ContentHandler {
-    private final JSONParser parser;
-    private final Reader reader;
+  // the string value is sent by chunks of its unescaped UTF-8 bytes or of its characters,
+  // a null value is not sent
+  static final class ChunkedRule extends Rule {
+    private final ChunkConsumer<Object, Object> chunkConsumer;
+    private final boolean chars;
 
-    private final ArrayDeque<Context> contextStack = new ArrayDeque<>();
-    private MethodHandle valueSetter;
+    @SuppressWarnings("unchecked")
+    ChunkedRule(ChunkConsumer<?, ?> chunkConsumer, boolean chars) {
+      this.chunkConsumer = (ChunkConsumer<Object, Object>)chunkConsumer;
+      this.chars = chars;
+    }
 
-    Handler(JSONParser parser, Reader reader) {
-      this.parser = parser;
-      this.reader = reader;
+    @Override
+    void bind(Handler handler, Object object) throws IOException {
+      JSONLexer lexer = handler.lexer;
+      if (!lexer.nextIsString()) {
+        Token token = lexer.nextToken();
+        if (token != Token.NULL) {
+          throw new IllegalStateException("schema mismatch, value is said to be " + this + " but found " + token);
+        }
+        return;
+      }
+      Chunks chunks = handler.chunks();
+      chunks.start(chunkConsumer, object, chars);
+      lexer.readString(chunks.bytes, chunks);
     }
 
-    
-    Context createFirstContext(JSONSchemaBuilder<?> builder) {
-      Context context = new Context(builder, ContextState.NONE);
-      contextStack.push(context);
-      return context;
+    @Override
+    public String toString() {
+      return "a chunked string";
     }
+  }
 
-    void push() throws IOException, ParseException {
-      parser.parse(reader, this, true);
-      
-      // spin a stream ??
-      Context context = contextStack.peek();
-      if (context.state == ContextState.START_STREAM) {
-        Object object = context.object;
-        context.object = null;
-        context.state = ContextState.NONE;
-        context.builder.createAndSendStream(this, object, context);
-        
-        // discard until context is popped, but object is still valid
-        context.state = ContextState.DISCARD;
+  // the buffers of the chunks of a handler, reused for all the chunked values
+  static final class Chunks implements JSONLexer.ChunkSink {
+    static final int CHUNK_SIZE = 8192;
+
+    final byte[] bytes = new byte[CHUNK_SIZE];
+    private final ByteBuffer byteBuffer = ByteBuffer.wrap(bytes);
+    private CharBuffer charBuffer;    // created with the decoder
+    private CharsetDecoder decoder;   // created by the first value sent as characters
+
+    // the current value
+    private ChunkConsumer<Object, Object> chunkConsumer;
+    private Object object;
+    private boolean chars;
+
+    void start(ChunkConsumer<Object, Object> chunkConsumer, Object object, boolean chars) {
+      this.chunkConsumer = chunkConsumer;
+      this.object = object;
+      this.chars = chars;
+      if (chars) {
+        if (decoder == null) {
+          decoder = UTF_8.newDecoder().
+              onMalformedInput(CodingErrorAction.REPLACE).
+              onUnmappableCharacter(CodingErrorAction.REPLACE);
+          charBuffer = CharBuffer.allocate(CHUNK_SIZE);
+        } else {
+          decoder.reset();
+        }
+      }
+    }
+
+    @Override
+    public int accept(byte[] chunk, int length, boolean last) {
+      Buffer byteBuffer = this.byteBuffer;  // the methods of Buffer exist in Java 8
+      byteBuffer.limit(length);
+      byteBuffer.position(0);
+      if (!chars) {
+        chunkConsumer.accept(object, this.byteBuffer, last);
+        return 0;
+      }
+      CharBuffer charBuffer = this.charBuffer;
+      for(;;) {
+        CoderResult result = decoder.decode(this.byteBuffer, charBuffer, last);
+        if (result.isUnderflow()) {
+          break;
+        }
+        sendChars(false);  // overflow
+      }
+      if (last) {
+        while(decoder.flush(charBuffer).isOverflow()) {
+          sendChars(false);
+        }
+        sendChars(true);
+        return 0;
+      }
+      if (charBuffer.position() != 0) {
+        sendChars(false);
       }
+      return byteBuffer.remaining();  // the start of a multi bytes sequence
     }
 
+    private void sendChars(boolean last) {
+      Buffer charBuffer = this.charBuffer;
+      charBuffer.flip();
+      chunkConsumer.accept(object, this.charBuffer, last);
+      charBuffer.clear();
+    }
+  }
+
+  // the setter is called for each element if the value is an array
+  static abstract class ValueRule extends Rule {
+    final MethodHandle setter;
+
+    ValueRule(MethodHandle setter) {
+      this.setter = setter;
+    }
 
     @Override
-    public void startJSON() throws ParseException, IOException {
-      // do nothing
+    final void bind(Handler handler, Object object) throws IOException {
+      handler.bindValue(this, object, handler.lexer.nextToken());
+    }
+
+    // the token is neither an array nor an object
+    abstract void bindValue(JSONLexer lexer, Object object, Token token) throws Throwable;
+
+    IllegalStateException mismatch(String found) {
+      return new IllegalStateException("schema mismatch, value is said to be " + this + " but found " + found);
     }
+  }
+
+  // setter of type (Object,Object)void
+  static final class ObjectValueRule extends ValueRule {
+    private final StringCache strings;  // null if the strings are not canonicalized
+
+    ObjectValueRule(MethodHandle setter) {
+      this(setter, null);
+    }
+
+    private ObjectValueRule(MethodHandle setter, StringCache strings) {
+      super(setter);
+      this.strings = strings;
+    }
+
+    ObjectValueRule withStrings(StringCache strings) {
+      return new ObjectValueRule(setter, strings);
+    }
+
     @Override
-    public void endJSON() throws ParseException, IOException {
-      Context context = contextStack.peek();
-      context.object = null;
-      context.state = ContextState.END_STREAM;
+    void bindValue(JSONLexer lexer, Object object, Token token) throws Throwable {
+      setter.invokeExact(object, value(lexer, token, strings));
+    }
+
+    // the token is neither an array nor an object
+    static Object value(JSONLexer lexer, Token token, StringCache strings) throws JSONParseException {
+      switch(token) {
+      case STRING:
+        return (strings == null)? lexer.stringValue(): lexer.stringValue(strings);
+      case NUMBER:
+        return lexer.isIntegral()? (Object)lexer.longValue(): (Object)lexer.doubleValue();
+      case TRUE:
+        return Boolean.TRUE;
+      case FALSE:
+        return Boolean.FALSE;
+      case NULL:
+        return null;
+      default:
+        throw lexer.error("unexpected " + token);
+      }
     }
 
     @Override
-    public boolean startArray() throws ParseException, IOException {
-      return true;
+    public String toString() {
+      return "an object";
     }
+  }
+
+  // setter of type (Object,int)void, a null keeps the default value,
+  // the setter of a short or a byte is called with the values in the range of the type
+  static final class IntValueRule extends ValueRule {
+    private final Class<?> type;  // int, short or byte
+    private final int min, max;
+
+    IntValueRule(MethodHandle setter) {
+      this(setter, int.class);
+    }
+
+    IntValueRule(MethodHandle setter, Class<?> type) {
+      super(setter);
+      this.type = type;
+      if (type == short.class) {
+        min = Short.MIN_VALUE;
+        max = Short.MAX_VALUE;
+      } else if (type == byte.class) {
+        min = Byte.MIN_VALUE;
+        max = Byte.MAX_VALUE;
+      } else {
+        min = Integer.MIN_VALUE;
+        max = Integer.MAX_VALUE;
+      }
+    }
+
     @Override
-    public boolean endArray() throws ParseException, IOException {
-      return true;
+    void bindValue(JSONLexer lexer, Object object, Token token) throws Throwable {
+      if (token == Token.NUMBER) {
+        long value = lexer.longValue();
+        if (!lexer.isIntegral() || value < min || value > max) {
+          throw mismatch("the number " + lexer.doubleValue());
+        }
+        setter.invokeExact(object, (int)value);
+        return;
+      }
+      if (token != Token.NULL) {
+        throw mismatch(token.toString());
+      }
+    }
+
+    @Override
+    public String toString() {
+      return (type == int.class)? "an int": "a " + type.getName();
     }
+  }
 
+  // setter of type (Object,long)void, a null keeps the default value
+  static final class LongValueRule extends ValueRule {
+    LongValueRule(MethodHandle setter) {
+      super(setter);
+    }
 
     @Override
-    public boolean startObjectEntry(String key) throws ParseException, IOException {
-      Context context = contextStack.peek();
-      if (context.state == ContextState.DISCARD) {
-        contextStack.push(DISCARD_CONTEXT);
-        return true;
+    void bindValue(JSONLexer lexer, Object object, Token token) throws Throwable {
+      if (token == Token.NUMBER) {
+        if (!lexer.isIntegral()) {
+          throw mismatch("the number " + lexer.doubleValue());
+        }
+        setter.invokeExact(object, lexer.longValue());
+        return;
       }
+      if (token != Token.NULL) {
+        throw mismatch(token.toString());
+      }
+    }
 
-      //System.out.println("start object entry " + key + " " + context.builder.ruleMap);
-      
-      Object rule = context.builder.ruleMap.get(key);
-      if (rule == null) {
-        contextStack.push(DISCARD_CONTEXT);
-        return true;
+    @Override
+    public String toString() {
+      return "a long";
+    }
+  }
+
+  // setter of type (Object,double)void, a null keeps the default value
+  static final class DoubleValueRule extends ValueRule {
+    DoubleValueRule(MethodHandle setter) {
+      super(setter);
+    }
+
+    @Override
+    void bindValue(JSONLexer lexer, Object object, Token token) throws Throwable {
+      if (token == Token.NUMBER) {
+        setter.invokeExact(object, lexer.doubleValue());
+        return;
       }
+      if (token != Token.NULL) {
+        throw mismatch(token.toString());
+      }
+    }
 
-      if (rule instanceof JSONSchemaBuilder) {
-        JSONSchemaBuilder<?> builder = (JSONSchemaBuilder<?>)rule;
-        Context newContext = new Context(builder, ContextState.START_STREAM);
-        newContext.object = context.object;  // send object of previous context 
-        contextStack.push(newContext);
-        return false;   // stop parsing to spin a stream
-      } 
+    @Override
+    public String toString() {
+      return "a double";
+    }
+  }
 
-      // value rule
-      valueSetter = (MethodHandle)rule;
-      return true;
+  // setter of type (Object,boolean)void, a null keeps the default value
+  static final class BooleanValueRule extends ValueRule {
+    BooleanValueRule(MethodHandle setter) {
+      super(setter);
     }
+
     @Override
-    public boolean endObjectEntry() throws ParseException, IOException {
-      Context context = contextStack.peek();
-      if (context.state == ContextState.DISCARD) {
-        contextStack.pop();
-        return true;
+    void bindValue(JSONLexer lexer, Object object, Token token) throws Throwable {
+      switch(token) {
+      case TRUE:
+        setter.invokeExact(object, true);
+        return;
+      case FALSE:
+        setter.invokeExact(object, false);
+        return;
+      case NULL:
+        return;
+      default:
+        throw mismatch(token.toString());
       }
+    }
 
-      if (valueSetter != null) {  // is it a value entry
-        valueSetter = null;
-        return true;
+    @Override
+    public String toString() {
+      return "a boolean";
+    }
+  }
+  
+  // a where rule tests the value of a key, if the test fails the object is rejected,
+  // otherwise the value is bound by the rule of the key if there is one
+  static abstract class WhereRule extends Rule {
+    final long bit;            // set in the matched bits of the handler if the test succeeds
+    private final ValueRule rule;  // may be null
+
+    WhereRule(long bit, ValueRule rule) {
+      this.bit = bit;
+      this.rule = rule;
+    }
+
+    abstract WhereRule withRule(long bit, ValueRule rule);
+
+    @Override
+    final void bind(Handler handler, Object object) throws IOException {
+      JSONLexer lexer = handler.lexer;
+      Token token = lexer.nextToken();
+      if (token == Token.BEGIN_ARRAY || token == Token.BEGIN_OBJECT) {
+        throw new IllegalStateException("schema mismatch, value is said to be a primitive not an " +
+            ((token == Token.BEGIN_ARRAY)? "array": "object"));
+      }
+      if (!test(lexer, token)) {
+        handler.reject();
+        return;
       }
+      handler.match(bit);
+      if (rule != null) {
+        handler.bindValue(rule, object, token);
+      }
+    }
 
-      // it's an object entry
-      context.object = null;
-      context.state = ContextState.END_STREAM;
-      contextStack.pop();
-      return false;  // stop parsing
+    // the token is neither an array nor an object
+    abstract boolean test(JSONLexer lexer, Token token) throws IOException;
+
+    IllegalStateException mismatch(String found) {
+      return new IllegalStateException("schema mismatch, value is said to be " + this + " but found " + found);
+    }
+  }
+
+  static final class ObjectWhereRule extends WhereRule {
+    private final Class<?> type;
+    private final Predicate<Object> predicate;
+
+    @SuppressWarnings("unchecked")
+    ObjectWhereRule(long bit, ValueRule rule, Class<?> type, Predicate<?> predicate) {
+      super(bit, rule);
+      this.type = type;
+      this.predicate = (Predicate<Object>)predicate;
     }
 
     @Override
-    public boolean startObject() throws ParseException, IOException {
-      Context context = contextStack.peek();
-      if (context.state == ContextState.DISCARD) {
-        return true;
+    WhereRule withRule(long bit, ValueRule rule) {
+      return new ObjectWhereRule(bit, rule, type, predicate);
+    }
+
+    @Override
+    boolean test(JSONLexer lexer, Token token) throws IOException {
+      return predicate.test(type.cast(ObjectValueRule.value(lexer, token, null)));
+    }
+
+    @Override
+    public String toString() {
+      return "an object";
+    }
+  }
+
+  // a null value is rejected
+  static final class IntWhereRule extends WhereRule {
+    private final IntPredicate predicate;
+
+    IntWhereRule(long bit, ValueRule rule, IntPredicate predicate) {
+      super(bit, rule);
+      this.predicate = predicate;
+    }
+
+    @Override
+    WhereRule withRule(long bit, ValueRule rule) {
+      return new IntWhereRule(bit, rule, predicate);
+    }
+
+    @Override
+    boolean test(JSONLexer lexer, Token token) throws IOException {
+      if (token == Token.NUMBER) {
+        long value = lexer.longValue();
+        if (!lexer.isIntegral() || value != (int)value) {
+          throw mismatch("the number " + lexer.doubleValue());
+        }
+        return predicate.test((int)value);
       }
-      
-      try {
-        context.object = context.builder.constructor.invokeExact();
-      } catch(Error | RuntimeException e) {
-        throw e;
-      } catch(Throwable t) {
-        throw new AssertionError(t);
+      if (token != Token.NULL) {
+        throw mismatch(token.toString());
       }
-      return true;
+      return false;
+    }
+
+    @Override
+    public String toString() {
+      return "an int";
+    }
+  }
+
+  // a null value is rejected
+  static final class LongWhereRule extends WhereRule {
+    private final LongPredicate predicate;
+
+    LongWhereRule(long bit, ValueRule rule, LongPredicate predicate) {
+      super(bit, rule);
+      this.predicate = predicate;
+    }
+
+    @Override
+    WhereRule withRule(long bit, ValueRule rule) {
+      return new LongWhereRule(bit, rule, predicate);
+    }
+
+    @Override
+    boolean test(JSONLexer lexer, Token token) throws IOException {
+      if (token == Token.NUMBER) {
+        if (!lexer.isIntegral()) {
+          throw mismatch("the number " + lexer.doubleValue());
+        }
+        return predicate.test(lexer.longValue());
+      }
+      if (token != Token.NULL) {
+        throw mismatch(token.toString());
+      }
+      return false;
+    }
+
+    @Override
+    public String toString() {
+      return "a long";
+    }
+  }
+
+  // a null value is rejected
+  static final class DoubleWhereRule extends WhereRule {
+    private final DoublePredicate predicate;
+
+    DoubleWhereRule(long bit, ValueRule rule, DoublePredicate predicate) {
+      super(bit, rule);
+      this.predicate = predicate;
+    }
+
+    @Override
+    WhereRule withRule(long bit, ValueRule rule) {
+      return new DoubleWhereRule(bit, rule, predicate);
+    }
+
+    @Override
+    boolean test(JSONLexer lexer, Token token) throws IOException {
+      if (token == Token.NUMBER) {
+        return predicate.test(lexer.doubleValue());
+      }
+      if (token != Token.NULL) {
+        throw mismatch(token.toString());
+      }
+      return false;
+    }
+
+    @Override
+    public String toString() {
+      return "a double";
+    }
+  }
+  
+  // a property reads the value of a key from an object to write it,
+  // like the value rules, the properties are specialized by type
+  static abstract class Property {
+    final byte[] name;  // the key encoded as a JSON string followed by ':'
+    final MethodHandle getter;
+
+    Property(String key, MethodHandle getter) {
+      this.name = JSONWriter.encodeName(key);
+      this.getter = getter;
+    }
+
+    abstract void write(JSONWriter<?> writer, Object object) throws Throwable;
+  }
+
+  // getter of type (Object)Object
+  static final class ObjectProperty extends Property {
+    final String key;
+    final Type type;  // the generic type of an implicit field, null for a declared getter
+
+    ObjectProperty(String key, MethodHandle getter, Type type) {
+      super(key, getter);
+      this.key = key;
+      this.type = type;
+    }
+
+    @Override
+    void write(JSONWriter<?> writer, Object object) throws Throwable {
+      writer.writeValue((Object)getter.invokeExact(object));
+    }
+  }
+
+  // getter of type (Object)Object, the objects are written by the builder of the entry
+  static final class EntryProperty extends Property {
+    final JSONSchemaBuilder<?> builder;
+
+    EntryProperty(String key, MethodHandle getter, JSONSchemaBuilder<?> builder) {
+      super(key, getter);
+      this.builder = builder;
+    }
+
+    @Override
+    void write(JSONWriter<?> writer, Object object) throws Throwable {
+      writer.writeEntry(builder, (Object)getter.invokeExact(object));
+    }
+  }
+
+  // getter of type (Object)int
+  static final class IntProperty extends Property {
+    IntProperty(String key, MethodHandle getter) {
+      super(key, getter);
+    }
+
+    @Override
+    void write(JSONWriter<?> writer, Object object) throws Throwable {
+      writer.writeLong((int)getter.invokeExact(object));
+    }
+  }
+
+  // getter of type (Object)long
+  static final class LongProperty extends Property {
+    LongProperty(String key, MethodHandle getter) {
+      super(key, getter);
+    }
+
+    @Override
+    void write(JSONWriter<?> writer, Object object) throws Throwable {
+      writer.writeLong((long)getter.invokeExact(object));
+    }
+  }
+
+  // getter of type (Object)double
+  static final class DoubleProperty extends Property {
+    DoubleProperty(String key, MethodHandle getter) {
+      super(key, getter);
+    }
+
+    @Override
+    void write(JSONWriter<?> writer, Object object) throws Throwable {
+      writer.writeDouble((double)getter.invokeExact(object));
+    }
+  }
+
+  // getter of type (Object)float
+  static final class FloatProperty extends Property {
+    FloatProperty(String key, MethodHandle getter) {
+      super(key, getter);
+    }
+
+    @Override
+    void write(JSONWriter<?> writer, Object object) throws Throwable {
+      writer.writeFloat((float)getter.invokeExact(object));
+    }
+  }
+
+  // getter of type (Object)boolean
+  static final class BooleanProperty extends Property {
+    BooleanProperty(String key, MethodHandle getter) {
+      super(key, getter);
+    }
+
+    @Override
+    void write(JSONWriter<?> writer, Object object) throws Throwable {
+      writer.writeBoolean((boolean)getter.invokeExact(object));
+    }
+  }
+
+  static class Context {
+    final JSONSchemaBuilder<?> builder;
+    Object object;
+    ContextState state;
+    int depth;     // number of enclosing arrays
+    boolean rejectedAsNull;  // a rejected object is returned as null instead of being skipped
+
+    Context(JSONSchemaBuilder<?> builder, ContextState state) {
+      this.builder = builder;
+      this.state = state;
+    }
+    
+    @Override
+    public String toString() {
+      return super.toString() + " " + builder.toString() + " " + Objects.toString(object) +
+          " state: " + state + " depth: " + depth;
+    }
+  }
+
+  // an input that can be read from any offset, used to split the top level stream
+  interface SeekableInput {
+    JSONLexer lexer(long start, long end);
+  }
+
+  // creates the handler of a top level stream or of one of its chunks
+  interface HandlerFactory {
+    Handler create(JSONLexer lexer, boolean split);
+
+    // the handlers reuse the instances, so the objects of a stream are not distinct
+    default boolean reusesInstances() {
+      return false;
+    }
+  }
+
+  // the characteristic DISTINCT of a stream, the handler may be null if not yet created
+  static int distinct(Handler handler, HandlerFactory handlerFactory) {
+    boolean reuse = (handler != null)? handler.reusesInstances():
+      handlerFactory != null && handlerFactory.reusesInstances();
+    return reuse? 0: Spliterator.DISTINCT;
+  }
+
+  // the values of the parameters of the constructor of an object, the primitive values are stored
+  // as longs, so binding a primitive parameter never boxes it.
+  // The rules of the parameters store the values in the slots and the creator of the builder
+  // calls the constructor with the values of the slots once the object is parsed
+  static final class Slots {
+    final long[] primitives;
+    final Object[] objects;
+
+    Slots(int count) {
+      primitives = new long[count];
+      objects = new Object[count];
+    }
+
+    void clear(int count) {
+      Arrays.fill(primitives, 0, count, 0L);
+      Arrays.fill(objects, 0, count, null);
+    }
+
+    private static void setInt(int index, Object slots, int value) {
+      ((Slots)slots).primitives[index] = value;
+    }
+    private static void setLong(int index, Object slots, long value) {
+      ((Slots)slots).primitives[index] = value;
+    }
+    private static void setDouble(int index, Object slots, double value) {
+      ((Slots)slots).primitives[index] = Double.doubleToRawLongBits(value);
+    }
+    private static void setBoolean(int index, Object slots, boolean value) {
+      ((Slots)slots).primitives[index] = value? 1: 0;
+    }
+    private static void setObject(int index, Object slots, Object value) {
+      ((Slots)slots).objects[index] = value;
+    }
+
+    private static int getInt(int index, Slots slots) {
+      return (int)slots.primitives[index];
+    }
+    private static long getLong(int index, Slots slots) {
+      return slots.primitives[index];
+    }
+    private static double getDouble(int index, Slots slots) {
+      return Double.longBitsToDouble(slots.primitives[index]);
+    }
+    private static boolean getBoolean(int index, Slots slots) {
+      return slots.primitives[index] != 0;
+    }
+    private static Object getObject(int index, Slots slots) {
+      return slots.objects[index];
+    }
+
+    // a rule that stores the value of the parameter at index
+    static Rule rule(int index, Class<?> type) {
+      if (type == int.class || type == short.class || type == byte.class) {
+        return new IntValueRule(insertArguments(SET_INT, 0, index), type);
+      }
+      if (type == long.class) {
+        return new LongValueRule(insertArguments(SET_LONG, 0, index));
+      }
+      if (type == double.class || type == float.class) {
+        return new DoubleValueRule(insertArguments(SET_DOUBLE, 0, index));
+      }
+      if (type == boolean.class) {
+        return new BooleanValueRule(insertArguments(SET_BOOLEAN, 0, index));
+      }
+      return new ObjectValueRule(insertArguments(SET_OBJECT, 0, index));
+    }
+
+    // a result consumer that stores the result of a collector in the parameter at index
+    static BiConsumer<Object, Object> resultConsumer(int index) {
+      return (slots, result) -> ((Slots)slots).objects[index] = result;
+    }
+
+    // a getter of type (Slots)type of the parameter at index
+    static MethodHandle getter(int index, Class<?> type) {
+      if (type == int.class || type == short.class || type == byte.class) {
+        return explicitCastArguments(insertArguments(GET_INT, 0, index), methodType(type, Slots.class));
+      }
+      if (type == long.class) {
+        return insertArguments(GET_LONG, 0, index);
+      }
+      if (type == double.class || type == float.class) {
+        return explicitCastArguments(insertArguments(GET_DOUBLE, 0, index), methodType(type, Slots.class));
+      }
+      if (type == boolean.class) {
+        return insertArguments(GET_BOOLEAN, 0, index);
+      }
+      return insertArguments(GET_OBJECT, 0, index).asType(methodType(type, Slots.class));
+    }
+
+    // adapts the constructor to a creator of type (Object)Object that takes the slots
+    static MethodHandle creator(MethodHandle constructor) {
+      Class<?>[] parameterTypes = constructor.type().parameterArray();
+      MethodHandle[] getters = new MethodHandle[parameterTypes.length];
+      for(int i = 0; i < getters.length; i++) {
+        getters[i] = getter(i, parameterTypes[i]);
+      }
+      MethodHandle mh = filterArguments(constructor.asType(constructor.type().changeReturnType(Object.class)), 0, getters);
+      mh = permuteArguments(mh, methodType(Object.class, Slots.class), new int[getters.length]);
+      return mh.asType(methodType(Object.class, Object.class));
+    }
+
+    private static final MethodHandle SET_INT, SET_LONG, SET_DOUBLE, SET_BOOLEAN, SET_OBJECT,
+        GET_INT, GET_LONG, GET_DOUBLE, GET_BOOLEAN, GET_OBJECT;
+    static {
+      Lookup lookup = lookup();
+      try {
+        SET_INT = lookup.findStatic(Slots.class, "setInt", methodType(void.class, int.class, Object.class, int.class));
+        SET_LONG = lookup.findStatic(Slots.class, "setLong", methodType(void.class, int.class, Object.class, long.class));
+        SET_DOUBLE = lookup.findStatic(Slots.class, "setDouble", methodType(void.class, int.class, Object.class, double.class));
+        SET_BOOLEAN = lookup.findStatic(Slots.class, "setBoolean", methodType(void.class, int.class, Object.class, boolean.class));
+        SET_OBJECT = lookup.findStatic(Slots.class, "setObject", methodType(void.class, int.class, Object.class, Object.class));
+        GET_INT = lookup.findStatic(Slots.class, "getInt", methodType(int.class, int.class, Slots.class));
+        GET_LONG = lookup.findStatic(Slots.class, "getLong", methodType(long.class, int.class, Slots.class));
+        GET_DOUBLE = lookup.findStatic(Slots.class, "getDouble", methodType(double.class, int.class, Slots.class));
+        GET_BOOLEAN = lookup.findStatic(Slots.class, "getBoolean", methodType(boolean.class, int.class, Slots.class));
+        GET_OBJECT = lookup.findStatic(Slots.class, "getObject", methodType(Object.class, int.class, Slots.class));
+      } catch (NoSuchMethodException | IllegalAccessException e) {
+        throw new AssertionError(e);
+      }
+    }
+  }
+  
+  // chunks of the elements of a top level array,
+  // a chunk ends at the ',' or the ']' that follows its last element
+  static final class Splits {
+    static final long MIN_CHUNK_SIZE = 64 * 1024;
+
+    private final long start;    // offset of the first chunk
+    private long[] ends = new long[16];
+    private long[] elements = new long[16];  // number of elements up to the end of each chunk
+    int count;
+    boolean sized = true;        // all elements are objects
+
+    private Splits(long start) {
+      this.start = start;
+    }
+
+    long start(int chunk) {
+      return (chunk == 0)? start: ends[chunk - 1] + 1;
+    }
+
+    long end(int chunk) {
+      return ends[chunk];
+    }
+
+    long size(int from, int to) {
+      return elements[to - 1] - ((from == 0)? 0: elements[from - 1]);
+    }
+
+    private void add(long end, long elementCount) {
+      if (count == ends.length) {
+        ends = Arrays.copyOf(ends, count << 1);
+        elements = Arrays.copyOf(elements, count << 1);
+      }
+      ends[count] = end;
+      elements[count] = elementCount;
+      count++;
+    }
+
+    /**
+     * Scans the elements of a top level array without decoding them.
+     * 
+     * @param afterElement true if start is just after an element of the array,
+     *        false if start is before the array.
+     * @return the chunks or null if the input is not a non-empty top level array.
+     */
+    static Splits scan(SeekableInput input, long start, long end, boolean afterElement) throws IOException {
+      JSONLexer lexer = input.lexer(start, end);
+      if (lexer.nextToken() != (afterElement? Token.COMMA: Token.BEGIN_ARRAY)) {
+        return null;
+      }
+      long first = lexer.position();
+      long step = Math.max(MIN_CHUNK_SIZE, (end - first) >> 10);
+      Splits splits = new Splits(first);
+      long chunkStart = first;
+      long elements = 0;
+      for(;;) {
+        Token token = lexer.nextToken();
+        switch(token) {
+        case BEGIN_OBJECT:
+          lexer.skip(1);
+          break;
+        case BEGIN_ARRAY:
+          splits.sized = false;
+          lexer.skip(1);
+          break;
+        case END_ARRAY:
+          if (elements == 0 && !afterElement) {
+            return null;
+          }
+          throw lexer.error("unexpected ']'");
+        case STRING:
+        case NUMBER:
+        case TRUE:
+        case FALSE:
+        case NULL:
+          splits.sized = false;
+          break;
+        default:
+          throw lexer.error("unexpected " + token);
+        }
+        elements++;
+        
+        token = lexer.nextToken();
+        if (token == Token.COMMA) {
+          long comma = lexer.offset();
+          if (comma - chunkStart >= step) {
+            splits.add(comma, elements);
+            chunkStart = comma + 1;
+          }
+          continue;
+        }
+        if (token == Token.END_ARRAY) {
+          splits.add(lexer.offset(), elements);
+          if (lexer.nextToken() != Token.EOF) {
+            throw lexer.error("unexpected characters after the end of the JSON value");
+          }
+          return splits;
+        }
+        throw lexer.error("expect ',' or ']' but found " + token);
+      }
+    }
+  }
+
+  static class JSONSpliterator<T> implements Spliterator<T> {
+    private final JSONSchemaBuilder<?> builder;
+    private Handler handler;
+    private Context context;
+    private long traversed;
+
+    // only used to split the top level stream
+    private SeekableInput input;
+    private final long inputSize;
+    private final HandlerFactory handlerFactory;
+    private Splits splits;
+    private int from, to;   // chunks of the splits
+
+    JSONSpliterator(Handler handler, Context context, SeekableInput input, long inputSize, HandlerFactory handlerFactory) {
+      this.builder = context.builder;
+      this.handler = handler;
+      this.context = context;
+      this.input = input;
+      this.inputSize = inputSize;
+      this.handlerFactory = handlerFactory;
+    }
+
+    // the handler is created when the first element is requested
+    private JSONSpliterator(JSONSchemaBuilder<?> builder, SeekableInput input, HandlerFactory handlerFactory,
+                            Splits splits, int from, int to) {
+      this.builder = builder;
+      this.input = input;
+      this.handlerFactory = handlerFactory;
+      this.inputSize = -1;
+      this.splits = splits;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    public int characteristics() {
+      int distinct = distinct(handler, handlerFactory);
+      if (splits != null && splits.sized && builder.whereMask == 0) {
+        return distinct|ORDERED|NONNULL|SIZED|SUBSIZED;
+      }
+      return distinct|ORDERED|NONNULL;
+    }
+
+    @Override
+    public long estimateSize() {
+      if (splits == null) {
+        return Long.MAX_VALUE;
+      }
+      return splits.size(from, to) - traversed;
+    }
+
+    @Override
+    public Spliterator<T> trySplit() {
+      if (splits == null) {
+        if (input == null || !(context.state == ContextState.NONE ||
+            (context.state == ContextState.ARRAY_NEXT && context.depth == 1))) {
+          return null;
+        }
+        Splits splits;
+        try {
+          splits = Splits.scan(input, handler.lexer.position(), inputSize,
+              context.state == ContextState.ARRAY_NEXT);
+        } catch (IOException e) {
+          throw new IOError(e);
+        }
+        if (splits == null) {
+          input = null;
+          return null;
+        }
+        this.splits = splits;
+        from = 0;
+        to = splits.count;
+        handler = null;
+        context = null;
+        traversed = 0;
+      } else if (handler != null) {  // already started
+        return null;
+      }
+      if (to - from < 2) {
+        return null;
+      }
+      int middle = (from + to) >>> 1;
+      JSONSpliterator<T> prefix = new JSONSpliterator<>(builder, input, handlerFactory, splits, from, middle);
+      from = middle;
+      return prefix;
+    }
+
+    private void startChunks() throws IOException {
+      handler = handlerFactory.create(input.lexer(splits.start(from), splits.end(to - 1)), true);
+      context = handler.createFirstContext(builder);
+      context.state = ContextState.ARRAY_START;
+      context.depth = 1;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean tryAdvance(Consumer<? super T> consumer) {
+      try {
+        if (handler == null) {
+          startChunks();
+        }
+        if (!handler.next(context)) {
+          return false;
+        }
+      } catch (IOException e) {
+        throw new IOError(e);
+      }
+
+      //System.out.println("next " + context + " " + context.object + " " + context.state);
+
+      traversed++;
+      Object object = context.object;
+      context.object = null;
+      Handler handler = this.handler;
+      int previous = handler.startConsumer();
+      try {
+        consumer.accept((T)object);
+      } finally {
+        handler.endConsumer(previous);
+      }
+      return true;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super T> consumer) {
+      // this code is duplicated just to be faster
+      do {
+        // nothing
+      } while(tryAdvance(consumer));
+    }
+  }
+
+  // spliterator of a stream of JSON lines, a seekable input is split at a line boundary
+  static class LinesSpliterator<T> implements Spliterator<T> {
+    private final JSONSchemaBuilder<?> builder;
+    private final Consumer<? super JSONParseException> errorHandler;
+    private Handler handler;
+    private Context context;
+    private final SeekableInput input;
+    private final HandlerFactory handlerFactory;
+    private long start;
+    private final long end;
+
+    LinesSpliterator(JSONSchemaBuilder<?> builder, Consumer<? super JSONParseException> errorHandler,
+                     Handler handler, SeekableInput input, HandlerFactory handlerFactory, long start, long end) {
+      this.builder = builder;
+      this.errorHandler = errorHandler;
+      this.handler = handler;
+      this.input = input;
+      this.handlerFactory = handlerFactory;
+      this.start = start;
+      this.end = end;
+      if (handler != null) {
+        context = handler.createFirstContext(builder);
+      }
+    }
+
+    @Override
+    public int characteristics() {
+      return distinct(handler, handlerFactory)|ORDERED|NONNULL;
+    }
+
+    @Override
+    public long estimateSize() {
+      return (input == null)? Long.MAX_VALUE: end - start;
+    }
+
+    @Override
+    public Spliterator<T> trySplit() {
+      if (input == null || handler != null || end - start < 2 * Splits.MIN_CHUNK_SIZE) {
+        return null;
+      }
+      long middle;
+      try {
+        middle = input.lexer(start + ((end - start) >>> 1), end).skipLine();
+      } catch (IOException e) {
+        throw new IOError(e);
+      }
+      if (middle == -1 || middle == end) {
+        return null;
+      }
+      LinesSpliterator<T> prefix = new LinesSpliterator<>(builder, errorHandler, null, input, handlerFactory, start, middle);
+      start = middle;
+      return prefix;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean tryAdvance(Consumer<? super T> consumer) {
+      if (handler == null) {
+        handler = handlerFactory.create(input.lexer(start, end), false);
+        context = handler.createFirstContext(builder);
+      }
+      for(;;) {
+        try {
+          if (!handler.nextLine(context)) {
+            return false;
+          }
+          break;
+        } catch (JSONParseException e) {
+          if (errorHandler == null) {
+            throw new IOError(e);
+          }
+          errorHandler.accept(e);
+        } catch (IOException e) {
+          throw new IOError(e);
+        } catch (IOError e) {  // raised by the stream of an entry
+          if (errorHandler == null || !(e.getCause() instanceof JSONParseException)) {
+            throw e;
+          }
+          errorHandler.accept((JSONParseException)e.getCause());
+        }
+      }
+      Object object = context.object;
+      context.object = null;
+      int previous = handler.startConsumer();
+      try {
+        consumer.accept((T)object);
+      } finally {
+        handler.endConsumer(previous);
+      }
+      return true;
+    }
+  }
+
+  // spliterator of the batches of a columnar schema, the rows of the source are the current batch
+  // of its handler, a batch is sent when it is full or at the end of the source
+  static final class BatchSpliterator implements Spliterator<JSONColumns>, Consumer<JSONColumns> {
+    private final Spliterator<JSONColumns> rows;
+    private final int batchSize;
+    private JSONColumns batch;   // the batch of the last row
+    private boolean started;
+
+    BatchSpliterator(Spliterator<JSONColumns> rows, int batchSize) {
+      this.rows = rows;
+      this.batchSize = batchSize;
+    }
+
+    @Override
+    public void accept(JSONColumns batch) {
+      this.batch = batch;
+    }
+
+    @Override
+    public int characteristics() {
+      return rows.characteristics() & (DISTINCT|ORDERED|NONNULL);
+    }
+
+    @Override
+    public long estimateSize() {
+      long size = rows.estimateSize();
+      return (size == Long.MAX_VALUE)? size: (size + batchSize - 1) / batchSize;
+    }
+
+    @Override
+    public Spliterator<JSONColumns> trySplit() {
+      if (started) {  // the rows of the current batch precede the rows of the prefix
+        return null;
+      }
+      Spliterator<JSONColumns> prefix = rows.trySplit();
+      return (prefix == null)? null: new BatchSpliterator(prefix, batchSize);
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super JSONColumns> consumer) {
+      started = true;
+      while(rows.tryAdvance(this)) {
+        if (batch.isFull()) {
+          break;
+        }
+      }
+      JSONColumns batch = this.batch;
+      if (batch == null) {
+        return false;
+      }
+      this.batch = null;
+      consumer.accept(batch);
+      return true;
+    }
+  }
+
+  // spliterator of the records of an index, the records that are close
+  // in the input are read by the same lexer
+  static class IndexSpliterator<T> implements Spliterator<T> {
+    private final JSONSchemaBuilder<?> builder;
+    private final SeekableInput input;
+    private final HandlerFactory handlerFactory;
+    private final JSONIndex index;
+    private int record;
+    private final int to;
+    private Handler handler;
+    private Context context;
+    private long position;   // end of the last record read by the lexer of the handler
+
+    IndexSpliterator(JSONSchemaBuilder<?> builder, SeekableInput input, HandlerFactory handlerFactory,
+                     JSONIndex index, int record, int to) {
+      this.builder = builder;
+      this.input = input;
+      this.handlerFactory = handlerFactory;
+      this.index = index;
+      this.record = record;
+      this.to = to;
+    }
+
+    @Override
+    public int characteristics() {
+      int distinct = distinct(handler, handlerFactory);
+      if (builder.whereMask == 0) {
+        return distinct|ORDERED|NONNULL|SIZED|SUBSIZED;
+      }
+      return distinct|ORDERED|NONNULL;
+    }
+
+    @Override
+    public long estimateSize() {
+      return to - record;
+    }
+
+    @Override
+    public Spliterator<T> trySplit() {
+      if (to - record < 2) {
+        return null;
+      }
+      int middle = (record + to) >>> 1;
+      IndexSpliterator<T> prefix = new IndexSpliterator<>(builder, input, handlerFactory, index, record, middle);
+      record = middle;
+      return prefix;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean tryAdvance(Consumer<? super T> consumer) {
+      try {
+        for(;;) {
+          if (record == to) {
+            if (handler != null && context.state != ContextState.END_STREAM) {
+              handler.nextRecord(context, -1, -1);
+            }
+            return false;
+          }
+          long start = index.position(record);
+          long end = start + index.length(record);
+          record++;
+          if (handler == null || start < position || start - position > Splits.MIN_CHUNK_SIZE) {
+            long last = index.position(to - 1) + index.length(to - 1);
+            JSONLexer lexer = input.lexer(start, Math.max(end, last));
+            if (handler == null) {
+              handler = handlerFactory.create(lexer, false);
+              context = handler.createFirstContext(builder);
+            } else {
+              handler.reset(lexer);
+            }
+          }
+          position = end;
+          handler.nextRecord(context, start, end);
+          Object object = context.object;
+          context.object = null;
+          if (object != null) {
+            int previous = handler.startConsumer();
+            try {
+              consumer.accept((T)object);
+            } finally {
+              handler.endConsumer(previous);
+            }
+            return true;
+          }
+        }
+      } catch (IOException e) {
+        throw new IOError(e);
+      }
+    }
+  }
+
+  Stream<T> createAStream(Handler handler, Context context) {
+    return StreamSupport.stream(new JSONSpliterator<T>(handler, context, null, -1, null), false);
+  }
+  
+  void createAndSendStream(Handler handler, Object object, Context context) {
+    streamConsumer.accept(object, createAStream(handler, context));
+  }
+
+  static class Handler {
+    private static final Object REJECTED = new Object();  // returned by parseObject instead of a rejected object
+
+    JSONLexer lexer;
+    private final boolean split;  // the input is a chunk of the elements of a top level array
+    Context firstContext;
+    private Slots[] slotStack = new Slots[0];  // the slots of the objects created by a constructor, by depth
+    private int slotDepth;
+    private long matched;       // the bits of the where rules that matched the current object
+    private boolean rejected;   // the current object is rejected by a where rule
+    private JSONColumns columns;  // the batch filled by the rows of a columnar schema
+    private Object[] instances;   // the reused instances indexed by builder or null
+    private Chunks chunks;        // created by the first chunked value
+
+    Handler(JSONLexer lexer) {
+      this(lexer, false);
+    }
+
+    Handler(JSONLexer lexer, boolean split) {
+      this.lexer = lexer;
+      this.split = split;
+    }
+
+    Chunks chunks() {
+      Chunks chunks = this.chunks;
+      if (chunks == null) {
+        this.chunks = chunks = new Chunks();
+      }
+      return chunks;
+    }
+
+    // the objects of the builders which have an instance index are reused
+    Handler reuseInstances(int instanceCount) {
+      instances = new Object[instanceCount];
+      return this;
+    }
+
+    boolean reusesInstances() {
+      return instances != null;
+    }
+
+    // called around the consumer of an object sent by the handler,
+    // returns the state to restore, only a monitored handler measures the time of the consumer
+    int startConsumer() {
+      return 0;
+    }
+
+    void endConsumer(int previous) {
+      // empty
+    }
+
+    Context createFirstContext(JSONSchemaBuilder<?> builder) {
+      Context context = new Context(builder, ContextState.NONE);
+      firstContext = context;
+      return context;
+    }
+
+    // continues to parse the stream from the bytes of another lexer, used by the push parser
+    void reset(JSONLexer lexer) {
+      this.lexer = lexer;
+    }
+
+    /**
+     * Parses the next object of the stream described by the context.
+     * The stream is either a single object or the objects of an array,
+     * arrays of arrays are flattened.
+     * 
+     * @return true if an object was parsed and stored in the context,
+     *         false if there is no more object.
+     */
+    boolean next(Context context) throws IOException {
+      JSONLexer lexer = this.lexer;
+      for(;;) {
+        Token token;
+        switch(context.state) {
+        case END_STREAM:
+          return false;
+        case ARRAY_NEXT:
+          token = lexer.nextToken();
+          if (token == Token.END_ARRAY) {
+            endArray(context);
+            continue;
+          }
+          if (token == Token.EOF && split && context == firstContext) {
+            context.state = ContextState.END_STREAM;
+            return false;
+          }
+          if (token != Token.COMMA) {
+            throw lexer.error("expect ',' or ']' but found " + token);
+          }
+          token = lexer.nextToken();
+          break;
+        default:
+          token = lexer.nextToken();
+        }
+        
+        switch(token) {
+        case BEGIN_ARRAY:
+          context.depth++;
+          context.state = ContextState.ARRAY_START;
+          continue;
+        case END_ARRAY:
+          if (context.state != ContextState.ARRAY_START) {
+            throw lexer.error("unexpected ']'");
+          }
+          endArray(context);
+          continue;
+        case BEGIN_OBJECT: {
+          Object object = parseObject(context.builder);
+          if (context.depth == 0) {
+            endStream(context);
+          } else {
+            context.state = ContextState.ARRAY_NEXT;
+          }
+          if (object == REJECTED) {
+            if (!context.rejectedAsNull) {
+              continue;
+            }
+            object = null;
+          }
+          context.object = object;
+          return true;
+        }
+        case NULL:
+          if (context.depth == 0) {
+            endStream(context);
+            return false;
+          }
+          context.state = ContextState.ARRAY_NEXT;
+          continue;
+        case STRING:
+        case NUMBER:
+        case TRUE:
+        case FALSE:
+          throw new IllegalStateException("schema mismatch, value is said to be an object not a primitive");
+        default:
+          throw lexer.error("unexpected " + token);
+        }
+      }
+    }
+
+    /**
+     * Parses the object of the next non blank line.
+     * 
+     * @return true if an object was parsed and stored in the context,
+     *         false if there is no more line.
+     */
+    boolean nextLine(Context context) throws IOException {
+      JSONLexer lexer = this.lexer;
+      for(;;) {
+        if (!lexer.nextLine()) {
+          context.state = ContextState.END_STREAM;
+          return false;
+        }
+        Token token = lexer.nextToken();
+        if (token == Token.EOF) {  // blank line
+          continue;
+        }
+        if (token != Token.BEGIN_OBJECT) {
+          throw lexer.error("expect an object but found " + token);
+        }
+        Object object = parseObject(context.builder);
+        if (lexer.nextToken() != Token.EOF) {
+          throw lexer.error("unexpected characters after the end of the JSON value");
+        }
+        if (object == REJECTED) {
+          if (!context.rejectedAsNull) {
+            continue;
+          }
+          object = null;
+        }
+        context.object = object;
+        return true;
+      }
+    }
+
+    /**
+     * Parses the object between the offsets {@code start} and {@code end} of the input,
+     * used by the streams of an index.
+     * The object is null if it was rejected by a where rule.
+     *
+     * @param start the offset of the object or -1 if there is no more object.
+     * @return false if there is no more object.
+     */
+    boolean nextRecord(Context context, long start, long end) throws IOException {
+      if (start == -1) {
+        context.state = ContextState.END_STREAM;
+        return false;
+      }
+      JSONLexer lexer = this.lexer;
+      if (!lexer.nextRange(start, end)) {
+        throw lexer.error("unexpected end of input, the index does not match the input");
+      }
+      Token token = lexer.nextToken();
+      if (token != Token.BEGIN_OBJECT) {
+        throw lexer.error("expect an object but found " + token);
+      }
+      Object object = parseObject(context.builder);
+      if (lexer.nextToken() != Token.EOF) {
+        throw lexer.error("unexpected characters after the end of the JSON value");
+      }
+      context.object = (object == REJECTED)? null: object;
+      return true;
+    }
+
+    private void endArray(Context context) throws IOException {
+      if (--context.depth == 0) {
+        endStream(context);
+      } else {
+        context.state = ContextState.ARRAY_NEXT;
+      }
+    }
+
+    private void endStream(Context context) throws IOException {
+      context.state = ContextState.END_STREAM;
+      if (context == firstContext && lexer.nextToken() != Token.EOF) {
+        throw lexer.error("unexpected characters after the end of the JSON value");
+      }
+    }
+
+    // skip the elements of the stream that were not consumed
+    void skipStream(Context context) throws IOException {
+      switch(context.state) {
+      case END_STREAM:
+        return;
+      case NONE:
+        lexer.skipValue();
+        break;
+      default:
+        lexer.skip(context.depth);
+      }
+      context.state = ContextState.END_STREAM;
+    }
+
+    private Object parseObject(JSONSchemaBuilder<?> builder) throws IOException {
+      MethodHandle creator = builder.creator;
+      if (creator != null) {
+        return parseParameters(builder, creator);
+      }
+      MethodHandle constructor = builder.constructor;
+      if (constructor == null) {
+        return parseRow(builder);
+      }
+      Object[] instances = this.instances;
+      int index;
+      Object object;
+      try {
+        if (instances != null && (index = builder.instanceIndex) != -1) {
+          object = instances[index];
+          if (object == null) {
+            instances[index] = object = constructor.invokeExact();
+          } else {
+            builder.binding.clearer().invokeExact(object);
+          }
+        } else {
+          object = constructor.invokeExact();
+        }
+      } catch(Error | RuntimeException e) {
+        throw e;
+      } catch(Throwable t) {
+        throw new AssertionError(t);
+      }
+      return parseEntries(builder, object)? object: REJECTED;
+    }
+
+    // the values of a row of a columnar schema are stored in the current batch,
+    // which is returned for each row and replaced once it is full
+    private Object parseRow(JSONSchemaBuilder<?> builder) throws IOException {
+      JSONColumns columns = this.columns;
+      if (columns == null || columns.isFull()) {
+        this.columns = columns = new JSONColumns(builder.columnLayout);
+      }
+      columns.startRow();
+      if (!parseEntries(builder, columns)) {
+        columns.rejectRow();
+        return REJECTED;
+      }
+      columns.endRow();
+      return columns;
+    }
+
+    // the values are stored in the slots of the current depth, then the constructor is called
+    private Object parseParameters(JSONSchemaBuilder<?> builder, MethodHandle creator) throws IOException {
+      int slotDepth = this.slotDepth;
+      if (slotDepth == slotStack.length) {
+        slotStack = Arrays.copyOf(slotStack, Math.max(4, slotDepth * 2));
+      }
+      Slots slots = slotStack[slotDepth];
+      if (slots == null || slots.objects.length < builder.slotCount) {
+        slotStack[slotDepth] = slots = new Slots(builder.slotCount);
+      } else {
+        slots.clear(builder.slotCount);
+      }
+      this.slotDepth = slotDepth + 1;
+      try {
+        if (!parseEntries(builder, slots)) {
+          return REJECTED;
+        }
+        return creator.invokeExact((Object)slots);
+      } catch(IOException | Error | RuntimeException e) {
+        throw e;
+      } catch(Throwable t) {
+        throw new AssertionError(t);
+      } finally {
+        this.slotDepth = slotDepth;
+      }
+    }
+
+    // returns false if the object is rejected by a where rule
+    private boolean parseEntries(JSONSchemaBuilder<?> builder, Object object) throws IOException {
+      JSONLexer lexer = this.lexer;
+      long whereMask = builder.whereMask;
+      long matched = this.matched;  // of the enclosing object
+      this.matched = 0;
+      Token token = lexer.nextToken();
+      if (token == Token.END_OBJECT) {
+        return endEntries(whereMask, matched);
+      }
+      for(;;) {
+        if (token != Token.STRING) {
+          throw lexer.error("expect a key but found " + token);
+        }
+        Rule rule = lexer.matchKey(builder.keyMatcher);
+        lexer.expect(Token.COLON);
+
+        if (rule == null && (rule = builder.otherRule) == null) {
+          discardValue();
+        } else {
+          rule.bind(this, object);
+          if (rejected) {  // skip the rest of the object
+            rejected = false;
+            this.matched = matched;
+            lexer.skip(1);
+            return false;
+          }
+        }
+
+        token = lexer.nextToken();
+        if (token == Token.END_OBJECT) {
+          return endEntries(whereMask, matched);
+        }
+        if (token != Token.COMMA) {
+          throw lexer.error("expect ',' or '}' but found " + token);
+        }
+        token = lexer.nextToken();
+      }
+    }
+
+    // an object which keys of the where rules are missing is rejected
+    private boolean endEntries(long whereMask, long enclosingMatched) {
+      boolean accepted = matched == whereMask;
+      matched = enclosingMatched;
+      return accepted;
+    }
+
+    void reject() {
+      rejected = true;
+    }
+
+    void match(long bit) {
+      matched |= bit;
+    }
+
+    // the value of a key unknown to the builder
+    void discardValue() throws IOException {
+      lexer.skipValue();
+    }
+
+    void bindEntry(EntryRule rule, Object object) throws IOException {
+      rule.bindObjects(this, object);
+    }
+
+    void bindValue(ValueRule rule, Object object, Token token) throws IOException {
+      JSONLexer lexer = this.lexer;
+      switch(token) {
+      case BEGIN_ARRAY:
+        token = lexer.nextToken();
+        if (token == Token.END_ARRAY) {
+          return;
+        }
+        for(;;) {
+          bindValue(rule, object, token);
+          token = lexer.nextToken();
+          if (token == Token.END_ARRAY) {
+            return;
+          }
+          if (token != Token.COMMA) {
+            throw lexer.error("expect ',' or ']' but found " + token);
+          }
+          token = lexer.nextToken();
+        }
+      case BEGIN_OBJECT:
+        throw new IllegalStateException("schema mismatch, value is said to be a primitive not an object");
+      default:
+        try {
+          rule.bindValue(lexer, object, token);
+        } catch(IOException | Error | RuntimeException e) {
+          throw e;
+        } catch(Throwable t) {
+          throw new AssertionError(t);
+        }
+      }
+    }
+  }
+
+  // the state used to parse single documents, reused by the calls of a thread
+  static final class DocumentParser {
+    private static final int MAX_KEPT_SIZE = 1 << 20;  // a larger buffer is not kept
+    private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+    private final Handler handler;
+    private final Context context;
+    private byte[] bytes = new byte[256];  // the last text encoded in UTF-8
+    boolean parsing;
+
+    DocumentParser(JSONSchemaBuilder<?> builder, HandlerFactory handlerFactory) {
+      handler = handlerFactory.create(new JSONLexer(bytes, 0, 0, 0), false);
+      context = handler.createFirstContext(builder);
+    }
+
+    Object parse(byte[] array, int offset, int length) throws JSONParseException {
+      handler.lexer.reset(array, offset, length);
+      parsing = true;
+      try {
+        handler.nextRecord(context, 0, length);
+        Object object = context.object;
+        context.object = null;
+        return object;
+      } catch(JSONParseException e) {
+        throw e;
+      } catch(IOException e) {  // raised by a stream of an entry
+        throw new IOError(e);
+      } finally {
+        parsing = false;
+        handler.lexer.reset(bytes, 0, 0);  // the thread must not retain the array
+      }
+    }
+
+    Object parse(CharSequence text) throws JSONParseException {
+      int length = text.length();
+      byte[] bytes = this.bytes;
+      if (bytes.length < length * 3L) {  // a char is encoded in at most 3 bytes
+        bytes = new byte[(int)Math.min(length * 3L, encodedLength(text))];
+        if (bytes.length <= MAX_KEPT_SIZE) {
+          this.bytes = bytes;
+        }
+      }
+      int size = 0;
+      for(int i = 0; i < length; i++) {
+        char c = text.charAt(i);
+        if (c < 0x80) {
+          bytes[size++] = (byte)c;
+          continue;
+        }
+        int codePoint = c;
+        if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+          codePoint = Character.toCodePoint(c, text.charAt(++i));
+        } else if (Character.isSurrogate(c)) {
+          codePoint = '?';
+        }
+        size = JSONLexer.encodeUTF8(codePoint, bytes, size);
+      }
+      return parse(bytes, 0, size);
+    }
+
+    // the exact number of bytes of the text encoded in UTF-8, only computed for a large text
+    private static int encodedLength(CharSequence text) {
+      int length = text.length();
+      if (length * 3L <= MAX_ARRAY_SIZE) {
+        return length * 3;
+      }
+      long size = 0;
+      for(int i = 0; i < length; i++) {
+        char c = text.charAt(i);
+        if (c < 0x80) {
+          size++;
+        } else if (c < 0x800) {
+          size += 2;
+        } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+          size += 4;
+          i++;
+        } else if (Character.isSurrogate(c)) {
+          size++;  // encoded as '?'
+        } else {
+          size += 3;
+        }
+      }
+      if (size > MAX_ARRAY_SIZE) {
+        throw new IllegalArgumentException("the text is too large, " + size + " bytes once encoded in UTF-8");
+      }
+      return (int)size;
+    }
+  }
+
+  static final class Schema<T> implements JSONSchema<T> {
+    private final JSONSchemaBuilder<T> builder;
+    private final Consumer<? super JSONParseException> errorHandler;  // null if errors are raised
+    private final JSONSchemaStatistics statistics;                    // null if not monitored
+    private final ThreadFactory threadFactory;                        // null if not pipelined
+    private final boolean reuse;                                      // the instances are reused
+    private final HandlerFactory handlerFactory;
+    private final HandlerFactory documentHandlerFactory;             // never reuses the instances
+    private final ThreadLocal<DocumentParser> documentParsers;
+
+    Schema(JSONSchemaBuilder<T> builder, Consumer<? super JSONParseException> errorHandler,
+           JSONSchemaStatistics statistics, ThreadFactory threadFactory, boolean reuse) {
+      if (reuse && threadFactory != null) {
+        throw new IllegalStateException("the instances of a pipelined schema can not be reused");
+      }
+      this.builder = builder;
+      this.errorHandler = errorHandler;
+      this.statistics = statistics;
+      this.threadFactory = threadFactory;
+      this.reuse = reuse;
+      // an unmonitored schema never loads the monitored handler
+      HandlerFactory handlerFactory = (statistics == null)? Handler::new:
+        (lexer, split) -> new MonitoredHandler(lexer, split, statistics);
+      int instanceCount = builder.instanceCount;
+      this.handlerFactory = reuse? new HandlerFactory() {
+        @Override
+        public Handler create(JSONLexer lexer, boolean split) {
+          return handlerFactory.create(lexer, split).reuseInstances(instanceCount);
+        }
+        @Override
+        public boolean reusesInstances() {
+          return true;
+        }
+      }: handlerFactory;
+      // the object returned by parse() escapes to the caller, so it is never reused
+      this.documentHandlerFactory = handlerFactory;
+      documentParsers = ThreadLocal.withInitial(() -> new DocumentParser(builder, handlerFactory));
+    }
+
+    @SuppressWarnings("unchecked")
+    private Stream<T> stream(Spliterator<T> spliterator) {
+      if (statistics != null) {
+        statistics.streamCount.increment();
+      }
+      JSONColumns.Layout columnLayout = builder.columnLayout;
+      if (columnLayout != null) {
+        spliterator = (Spliterator<T>)new BatchSpliterator((Spliterator<JSONColumns>)spliterator, columnLayout.batchSize);
+      }
+      if (threadFactory == null) {
+        return StreamSupport.stream(spliterator, false);
+      }
+      PipelinedSpliterator<T> pipelined = new PipelinedSpliterator<>(spliterator, threadFactory);
+      return StreamSupport.stream(pipelined, false).onClose(pipelined::cancel);
+    }
+
+    // handler is null if the input is seekable
+    private Stream<T> stream(Handler handler, SeekableInput input, long inputSize, boolean lines) {
+      Spliterator<T> spliterator;
+      if (lines) {
+        spliterator = new LinesSpliterator<>(builder, errorHandler, handler, input, handlerFactory, 0, inputSize);
+      } else {
+        if (handler == null) {
+          handler = handlerFactory.create(input.lexer(0, inputSize), false);
+        }
+        Context context = handler.createFirstContext(builder);
+        spliterator = new JSONSpliterator<>(handler, context, input, inputSize, handlerFactory);
+      }
+      return stream(spliterator);
+    }
+
+    private Stream<T> stream(Reader reader, boolean lines) {
+      Objects.requireNonNull(reader);
+      return stream(handlerFactory.create(new JSONLexer(new JSONLexer.ReaderSource(reader)), false), null, -1, lines);
+    }
+
+    private Stream<T> stream(Path path, boolean lines) throws IOException {
+      return stream(path, (input, inputSize) -> stream(null, input, inputSize, lines));
+    }
+
+    private Stream<T> stream(Path path, BiFunction<SeekableInput, Long, Stream<T>> streamFactory) throws IOException {
+      FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+      try {
+        SeekableInput input = (start, end) -> new JSONLexer(new JSONLexer.MappedFileSource(channel, start, end), start);
+        return streamFactory.apply(input, channel.size()).
+            onClose(() -> {
+              try {
+                channel.close();
+              } catch (IOException e) {
+                throw new IOError(e);
+              }
+            });
+      } catch(IOException | RuntimeException | Error e) {
+        channel.close();
+        throw e;
+      }
+    }
+
+    private Stream<T> stream(ByteBuffer buffer, boolean lines) {
+      if (buffer.hasArray()) {
+        return stream(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining(), lines);
+      }
+      ByteBuffer input = buffer.duplicate();
+      int position = input.position();
+      return stream(null, (start, end) -> {
+        ByteBuffer slice = input.duplicate();
+        slice.limit(position + (int)end);
+        slice.position(position + (int)start);
+        return new JSONLexer(new JSONLexer.ByteBufferSource(slice), start);
+      }, input.remaining(), lines);
+    }
+
+    private Stream<T> stream(byte[] array, int offset, int length, boolean lines) {
+      if (offset < 0 || length < 0 || offset > array.length - length) {
+        throw new IndexOutOfBoundsException("offset " + offset + " length " + length);
+      }
+      return stream(null,
+          (start, end) -> new JSONLexer(array, offset, offset + (int)start, offset + (int)end),
+          length, lines);
+    }
+
+    @Override
+    public Stream<T> stream(Reader reader) {
+      return stream(reader, false);
+    }
+
+    @Override
+    public Stream<T> stream(Path path) throws IOException {
+      return stream(path, false);
+    }
+
+    @Override
+    public Stream<T> stream(Path path, JSONIndex index) throws IOException {
+      Objects.requireNonNull(index);
+      return stream(path, (input, inputSize) -> {
+        if (inputSize != index.inputSize()) {
+          throw new IllegalArgumentException("the index is for a file of " + index.inputSize() + " bytes, not " + inputSize);
+        }
+        return stream(new IndexSpliterator<>(builder, input, handlerFactory, index, 0, index.size()));
+      });
+    }
+
+    @Override
+    public Stream<T> stream(ByteBuffer buffer) {
+      return stream(buffer, false);
+    }
+
+    @Override
+    public Stream<T> stream(byte[] array, int offset, int length) {
+      return stream(array, offset, length, false);
+    }
+
+    private DocumentParser documentParser() {
+      checkNotColumnar("parsed as a single document");
+      DocumentParser parser = documentParsers.get();
+      if (parser.parsing) {  // called by a consumer of the schema
+        return new DocumentParser(builder, documentHandlerFactory);
+      }
+      return parser;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T parse(byte[] array, int offset, int length) throws JSONParseException {
+      if (offset < 0 || length < 0 || offset > array.length - length) {
+        throw new IndexOutOfBoundsException("offset " + offset + " length " + length);
+      }
+      return (T)documentParser().parse(array, offset, length);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T parse(CharSequence text) throws JSONParseException {
+      Objects.requireNonNull(text);
+      return (T)documentParser().parse(text);
+    }
+
+    @Override
+    public Stream<T> streamLines(Reader reader) {
+      return stream(reader, true);
+    }
+
+    @Override
+    public Stream<T> streamLines(Path path) throws IOException {
+      return stream(path, true);
+    }
+
+    @Override
+    public Stream<T> streamLines(ByteBuffer buffer) {
+      return stream(buffer, true);
+    }
+
+    @Override
+    public Stream<T> streamLines(byte[] array, int offset, int length) {
+      return stream(array, offset, length, true);
+    }
+
+    private JSONPushParser pushParser(Consumer<? super T> consumer, boolean lines) {
+      Objects.requireNonNull(consumer);
+      if (statistics != null) {
+        statistics.streamCount.increment();
+      }
+      return new PushParser<T>(builder, handlerFactory, consumer, lines, errorHandler);
+    }
+
+    @Override
+    public JSONPushParser pushParser(Consumer<? super T> consumer) {
+      return pushParser(consumer, false);
+    }
+
+    @Override
+    public JSONPushParser pushLinesParser(Consumer<? super T> consumer) {
+      return pushParser(consumer, true);
+    }
+
+    @Override
+    public JSONWriter<T> writer(OutputStream output) {
+      checkNotColumnar("written");
+      return new JSONWriter<>(builder, Objects.requireNonNull(output), null);
+    }
+
+    @Override
+    public JSONWriter<T> writer(Writer writer) {
+      checkNotColumnar("written");
+      return new JSONWriter<>(builder, null, Objects.requireNonNull(writer));
+    }
+
+    private void checkNotColumnar(String operation) {
+      if (builder.columnLayout != null) {
+        throw new UnsupportedOperationException("a columnar schema can not be " + operation);
+      }
+    }
+
+    @Override
+    public JSONSchema<T> skipMalformedLines(Consumer<? super JSONParseException> errorHandler) {
+      return new Schema<>(builder, Objects.requireNonNull(errorHandler), statistics, threadFactory, reuse);
+    }
+
+    @Override
+    public JSONSchema<T> monitor(JSONSchemaStatistics statistics) {
+      return new Schema<>(builder, errorHandler, Objects.requireNonNull(statistics), threadFactory, reuse);
+    }
+
+    @Override
+    public JSONSchema<T> pipelined(ThreadFactory threadFactory) {
+      return new Schema<>(builder, errorHandler, statistics, Objects.requireNonNull(threadFactory), reuse);
+    }
+
+    @Override
+    public JSONSchema<T> reuseInstances() {
+      return new Schema<>(builder, errorHandler, statistics, threadFactory, true);
+    }
+  }
+
+  private void freeze() {
+    //System.out.println("ruleMap.values " + ruleMap.values());
+    
+    // recursively freeze all builders, the nested builders share the strings of all the keys
+    for(Rule rule: ruleMap.values()) {
+      if (!(rule instanceof EntryRule)) {
+        continue;
+      }
+      JSONSchemaBuilder<?> builder = ((EntryRule)rule).builder;
+      if (builder.strings == null) {
+        builder.strings = strings;
+      }
+      builder.freeze(); 
+    }
+    freezePaths(paths);
+    
+    ClassBinding.Creator creator = (columnTypes != null)? null:
+        (constructorKeys != null)? binding.creator(constructorKeys): binding.recordCreator();
+    if (columnTypes != null) {
+      freezeColumns();
+    } else if (creator != null) {
+      if (paths.wildcard != null || !paths.children.isEmpty()) {
+        throw new IllegalStateException("no path can be declared on " + type.getName() + " which is created by a constructor with parameters");
+      }
+      bindParameters(creator);
+    } else {
+      constructor = binding.constructor();
+      ruleMap.forEach((key, rule) -> {
+        if (rule instanceof CollectorEntryRule && ((CollectorEntryRule)rule).isParameter()) {
+          throw new IllegalStateException("the entry " + key + " is a parameter but " + type.getName() + " is not created by a constructor with parameters");
+        }
+      });
+      HashMap<String, PathRule> pathRuleMap = new HashMap<>();
+      otherRule = PathRule.transitions(Arrays.asList(paths), pathRuleMap);
+      pathRuleMap.forEach((key, rule) -> {
+        if (ruleMap.putIfAbsent(key, rule) != null) {
+          throw new IllegalStateException("the key " + key + " is declared by a path and by another rule");
+        }
+      });
+      if (allowImplicit) {
+        binding.setters().forEach(ruleMap::putIfAbsent);
+      }
+    }
+    
+    if (strings != null || !stringsMap.isEmpty()) {
+      ruleMap.replaceAll((key, rule) -> {
+        StringCache strings = stringsMap.getOrDefault(key, this.strings);
+        return (strings != null && rule instanceof ObjectValueRule)? ((ObjectValueRule)rule).withStrings(strings): rule;
+      });
+    }
+    
+    if (whereMap.size() > 64) {
+      throw new IllegalStateException("more than 64 where rules are declared on " + type.getName());
+    }
+    whereMask = 0;
+    whereMap.forEach((key, where) -> {
+      Rule rule = ruleMap.get(key);
+      if (rule != null && !(rule instanceof ValueRule)) {
+        throw new IllegalStateException("the key " + key + " of a where rule is not a value");
+      }
+      long bit = 1L << Long.numberOfTrailingZeros(~whereMask);
+      whereMask |= bit;
+      ruleMap.put(key, where.withRule(bit, (ValueRule)rule));
+    });
+    
+    keyMatcher = new KeyMatcher<>(ruleMap);
+    
+    ArrayList<Property> properties = new ArrayList<>();
+    getterMap.forEach((key, getter) -> properties.add(asProperty(key, getter, null)));
+    if (allowImplicit) {
+      Map<String, Type> getterTypes = binding.getterTypes();
+      binding.getters().forEach((key, getter) -> {
+        if (!getterMap.containsKey(key)) {
+          properties.add(asProperty(key, getter, getterTypes.get(key)));
+        }
+      });
+    }
+    this.properties = properties.toArray(new Property[0]);
+    
+    //System.out.println("freeze "+ruleMap+" for builder "+this);
+  }
+
+  // the columns are value rules which setters store the values in the current row of a batch
+  private void freezeColumns() {
+    if (!ruleMap.isEmpty() || paths.wildcard != null || !paths.children.isEmpty() ||
+        constructorKeys != null || !getterMap.isEmpty()) {
+      throw new IllegalStateException("only columns and where rules can be declared on a columnar schema");
     }
-    
-    @Override
-    public boolean endObject() throws ParseException, IOException {
-      //System.out.println("end object");
-      Context context = contextStack.peek();
-      
-      // here, we don't test context.state because the context can
-      // still hold an un-published object
-      if (context == DISCARD_CONTEXT) {
-        return true;
+    if (columnTypes.isEmpty()) {
+      throw new IllegalStateException("no column is declared on a columnar schema");
+    }
+    Class<?>[] types = columnTypes.values().toArray(new Class<?>[0]);
+    JSONColumns.Layout layout = new JSONColumns.Layout(batchSize, types);
+    int column = 0;
+    for(String key: columnTypes.keySet()) {
+      layout.indexes.put(key, column);
+      Class<?> type = types[column];
+      ValueRule rule;
+      if (type == int.class) {
+        rule = new IntValueRule(insertArguments(JSONColumns.SET_INT, 1, column));
+      } else if (type == long.class) {
+        rule = new LongValueRule(insertArguments(JSONColumns.SET_LONG, 1, column));
+      } else if (type == double.class) {
+        rule = new DoubleValueRule(insertArguments(JSONColumns.SET_DOUBLE, 1, column));
+      } else {
+        rule = new ObjectValueRule(insertArguments(JSONColumns.SET_STRING, 1, column)).withStrings(new StringCache(4096));
       }
-      
-      context.state = ContextState.PUBLISH;
-      return false;  // stop parsing
+      ruleMap.put(key, rule);
+      column++;
     }
+    columnLayout = layout;
+  }
 
-    @Override
-    public boolean primitive(Object value) throws ParseException, IOException {
-      Context context = contextStack.peek();
-      if (context.state == ContextState.DISCARD) {
-        return true;
-      }
-      if (valueSetter == null) {
-        throw new IllegalStateException("schema mismatch, value is said to be an object not a primitive");
-      }
-      
-      try {
-        valueSetter.invokeExact(context.object, value);
-      } catch(Error|RuntimeException e) {
-        throw e;
-      } catch(Throwable t) {
-        throw new AssertionError(t);
+  // numbers the builders which objects are sent one by one to the user code, the top level builder,
+  // the builders of the entries sent as a stream and of the paths, so their instance can be reused
+  private int indexInstances(int count) {
+    if (constructor != null) {
+      instanceIndex = count++;
+    }
+    for(Rule rule: ruleMap.values()) {
+      if (rule instanceof StreamEntryRule) {
+        count = ((EntryRule)rule).builder.indexInstances(count);
       }
-      return true;
     }
+    return indexPathInstances(paths, count);
   }
 
-  private void freeze() {
-    //System.out.println("ruleMap.values " + ruleMap.values());
-    
-    // recursively freeze all builders
-    for(Object rule: ruleMap.values()) {
-      if (!(rule instanceof JSONSchemaBuilder)) {
-        continue;
-      }
-      ((JSONSchemaBuilder<?>)rule).freeze(); 
+  private static int indexPathInstances(PathTree node, int count) {
+    if (node.target instanceof ConsumerEntryRule) {
+      count = ((EntryRule)node.target).builder.indexInstances(count);
     }
-    
-    if (!allowImplicit)
-      return;
+    for(PathTree child: node.children.values()) {
+      count = indexPathInstances(child, count);
+    }
+    if (node.wildcard != null) {
+      count = indexPathInstances(node.wildcard, count);
+    }
+    return count;
+  }
 
-    for(Field field: type.getDeclaredFields()) {
-      String name = field.getName();
-      if (ruleMap.containsKey(name)) {
-        continue;
+  // freezes the builders of the objects selected by the paths
+  private void freezePaths(PathTree node) {
+    if (node.target instanceof EntryRule) {
+      JSONSchemaBuilder<?> builder = ((EntryRule)node.target).builder;
+      if (builder.strings == null) {
+        builder.strings = strings;
       }
-      ruleMap.put(name, asSetter(lookup, field));
+      builder.freeze();
+    }
+    node.children.values().forEach(this::freezePaths);
+    if (node.wildcard != null) {
+      freezePaths(node.wildcard);
     }
-    
-    //System.out.println("freeze "+ruleMap+" for builder "+this);
   }
   
-  private static MethodHandle getConstructor(Lookup lookup, Class<?> type) {
-    MethodHandle mh;
-    try {
-      mh = lookup.findConstructor(type, methodType(void.class));
-    } catch (NoSuchMethodException | IllegalAccessException e) {
-      throw new IllegalStateException(e);
+  // all the parameters are bound, a key that is not a parameter can not be bound
+  private void bindParameters(ClassBinding.Creator creator) {
+    Class<?>[] parameterTypes = creator.constructor.type().parameterArray();
+    HashMap<String, Rule> declaredRules = new HashMap<>(ruleMap);
+    for(int i = 0; i < parameterTypes.length; i++) {
+      String key = creator.keys[i];
+      Rule rule = declaredRules.remove(key);
+      if (rule == null) {
+        rule = Slots.rule(i, parameterTypes[i]);
+      } else if (rule instanceof CollectorEntryRule && ((CollectorEntryRule)rule).isParameter()) {
+        rule = ((CollectorEntryRule)rule).withResultConsumer(Slots.resultConsumer(i));
+      } else {
+        throw new IllegalStateException("the key " + key + " is a parameter of the constructor of " + type.getName() +
+            ", it can only be declared with parameter(key, type, collector)");
+      }
+      ruleMap.put(key, rule);
     }
-    return mh.asType(MethodType.methodType(Object.class));
-  } 
+    if (!declaredRules.isEmpty()) {
+      throw new IllegalStateException("the keys " + declaredRules.keySet() + " are not parameters of the constructor of " + type.getName());
+    }
+    this.creator = Slots.creator(creator.constructor);
+    this.slotCount = parameterTypes.length;
+  }
   
-  private static MethodHandle asSetter(Lookup lookup, Field field) {
-    MethodHandle mh;
-    try {
-      mh = lookup.unreflectSetter(field);
-    } catch (IllegalAccessException e) {
-      throw new IllegalStateException(e);
+  // the getter is of type (Object)type, genericType is null if the getter is declared
+  private Property asProperty(String key, MethodHandle getter, Type genericType) {
+    Class<?> type = getter.type().returnType();
+    if (type == int.class || type == short.class || type == byte.class) {
+      return new IntProperty(key, getter.asType(methodType(int.class, Object.class)));
+    }
+    if (type == long.class) {
+      return new LongProperty(key, getter);
+    }
+    if (type == double.class) {
+      return new DoubleProperty(key, getter);
+    }
+    if (type == float.class) {
+      return new FloatProperty(key, getter);
+    }
+    if (type == boolean.class) {
+      return new BooleanProperty(key, getter);
+    }
+    getter = getter.asType(methodType(Object.class, Object.class));
+    Rule rule = ruleMap.get(key);
+    if (rule instanceof EntryRule) {
+      return new EntryProperty(key, getter, ((EntryRule)rule).builder);
     }
-    return mh.asType(methodType(void.class, Object.class, Object.class));
+    return new ObjectProperty(key, getter, genericType);
   }
   
   private static MethodHandle asSetter(Class<?> type, BiConsumer<?, ?> valueConsumer) {
     return filterArguments(BICONSUMER_ACCEPT.bindTo(valueConsumer), 1, CLASS_CAST.bindTo(type));
   }
   
-  private static MethodHandle asSetter(MethodHandle biConsumerMH, Object valueConsumer, Class<?> wrapperType) {
-    return biConsumerMH.bindTo(valueConsumer).
-        asType(methodType(void.class, Object.class, wrapperType)).
-        asType(methodType(void.class, Object.class, Object.class));
+  private static ValueRule asSetter(MethodHandle biConsumerMH, Object valueConsumer, Class<?> type) {
+    return new ObjectValueRule(biConsumerMH.bindTo(valueConsumer).
+        asType(methodType(void.class, Object.class, type)).
+        asType(methodType(void.class, Object.class, Object.class)));
   }
   
   private static final MethodHandle BICONSUMER_ACCEPT,
       BIINTVALUECONSUMER_ACCEPT,
       BILONGVALUECONSUMER_ACCEPT,
       BIDOUBLEVALUECONSUMER_ACCEPT,
+      FUNCTION_APPLY,
+      TOINTFUNCTION_APPLYASINT,
+      TOLONGFUNCTION_APPLYASLONG,
+      TODOUBLEFUNCTION_APPLYASDOUBLE,
       CLASS_CAST;
   static {
     try {
@@ -401,6 +2631,14 @@ public class JSONSchemaBuilder<T> {
           methodType(void.class, Object.class, long.class));
       BIDOUBLEVALUECONSUMER_ACCEPT = publicLookup().findVirtual(BiDoubleValueConsumer.class, "accept",
           methodType(void.class, Object.class, double.class));
+      FUNCTION_APPLY = publicLookup().findVirtual(Function.class, "apply",
+          methodType(Object.class, Object.class));
+      TOINTFUNCTION_APPLYASINT = publicLookup().findVirtual(ToIntFunction.class, "applyAsInt",
+          methodType(int.class, Object.class));
+      TOLONGFUNCTION_APPLYASLONG = publicLookup().findVirtual(ToLongFunction.class, "applyAsLong",
+          methodType(long.class, Object.class));
+      TODOUBLEFUNCTION_APPLYASDOUBLE = publicLookup().findVirtual(ToDoubleFunction.class, "applyAsDouble",
+          methodType(double.class, Object.class));
       CLASS_CAST = publicLookup().findVirtual(Class.class, "cast",
           methodType(Object.class, Object.class));
     } catch (NoSuchMethodException | IllegalAccessException e) {
@@ -442,12 +2680,59 @@ public class JSONSchemaBuilder<T> {
     JSONSchemaBuilder<T> builder = new JSONSchemaBuilder<>(lookup, type, null);
     builderConsumer.accept(builder);
     builder.freeze();
-    return reader -> {
-      Objects.requireNonNull(reader);
-      Handler handler = new Handler(new JSONParser(), reader);
-      Context context = handler.createFirstContext(builder);
-      return builder.createAStream(handler, context);
-    };
+    builder.instanceCount = builder.indexInstances(0);
+    return new Schema<>(builder, null, null, null, false);
+  }
+
+  /**
+   * Create a description (a schema) of a JSON which top level objects are not created
+   * but stored as rows in batches of columns.
+   * The builder declares the columns with {@link #column(String, Class)} and may declare
+   * where rules and canonical strings, the other keys are skipped.
+   * The streams of the schema provide a batch each time {@code batchSize} rows are parsed
+   * and a last batch with the remaining rows.
+   * A columnar schema can not be written.
+   *
+   * @param batchSize the number of rows of a batch.
+   * @param builderConsumer consumer that will be called with a builder to provide
+   *        the columns of the top level objects.
+   * @return a schema of a JSON stream of batches.
+   *
+   * @see JSONColumns
+   */
+  public static JSONSchema<JSONColumns> columnar(int batchSize, Consumer<JSONSchemaBuilder<JSONColumns>> builderConsumer) {
+    if (batchSize <= 0) {
+      throw new IllegalArgumentException("invalid batch size " + batchSize);
+    }
+    JSONSchemaBuilder<JSONColumns> builder =
+        new JSONSchemaBuilder<>(MethodHandles.lookup(), JSONColumns.class, null, new LinkedHashMap<>(), batchSize);
+    builder.allowImplicit = false;
+    builderConsumer.accept(builder);
+    builder.freeze();
+    return new Schema<>(builder, null, null, null, false);
+  }
+
+  /**
+   * Resolves ahead of time the constructor, the setters and the getters of the fields
+   * of the classes, so the schemas later created with the same lookup do not use reflection.
+   * The resolved bindings are shared by all the schemas and do not prevent the classes
+   * to be unloaded.
+   *
+   * This method is typically called in a static initializer, so its cost is paid at the same time
+   * as class loading and is recorded by the training run of a CDS archive or an AOT cache.
+   *
+   * @param lookup the {@link Lookup} object used to find the fields of the classes.
+   * @param types the classes of the objects of the schemas.
+   *
+   * @see #schema(Lookup, Class, Consumer)
+   */
+  public static void preload(Lookup lookup, Class<?>... types) {
+    Objects.requireNonNull(lookup);
+    for(Class<?> type: types) {
+      ClassBinding binding = ClassBinding.of(lookup, type);
+      binding.setters();
+      binding.getters();
+    }
   }
 
   /**
@@ -465,7 +2750,7 @@ public class JSONSchemaBuilder<T> {
   public <U> JSONSchemaBuilder<T> entry(String key, Class<U> type, Consumer<JSONSchemaBuilder<U>> builderConsumer, BiConsumer<? super T, Stream<U>> streamConsumer) {
     @SuppressWarnings("unchecked")
     JSONSchemaBuilder<U> builder = new JSONSchemaBuilder<>(lookup, type, (BiConsumer<Object, Stream<U>>)streamConsumer);
-    ruleMap.put(key, builder);
+    ruleMap.put(key, new StreamEntryRule(key, builder));
     builderConsumer.accept(builder);
     return this;
   }
@@ -483,7 +2768,54 @@ public class JSONSchemaBuilder<T> {
   public <U> JSONSchemaBuilder<T> entry(String key, Class<U> type, BiConsumer<? super T, Stream<U>> streamConsumer) {
     @SuppressWarnings("unchecked")
     JSONSchemaBuilder<U> builder = new JSONSchemaBuilder<>(lookup, type, (BiConsumer<Object, Stream<U>>)streamConsumer);
-    ruleMap.put(key, builder);
+    ruleMap.put(key, new StreamEntryRule(key, builder));
+    return this;
+  }
+
+  /**
+   * Declares that the object described by the current builder has
+   * an entry named {@code key} of type {@code type} which objects
+   * are accumulated by a collector.
+   * Unlike {@link #entry(String, Class, Consumer, BiConsumer)},
+   * no stream is created for each object of the current builder.
+   * 
+   * @param key name of the entry.
+   * @param type type of the objects of this entry.
+   * @param builderConsumer a consumer that will be called with a builder to provide
+   *        a description of the values and entries of the objects of this entry. 
+   * @param collector a collector that will accumulate the JSON objects
+   *        corresponding to the entry during the parsing.
+   * @param resultConsumer a consumer that will be called with the object described
+   *        by the current builder and the result of the collector.
+   * @return the current schema builder.
+   */
+  public <U, A, R> JSONSchemaBuilder<T> entry(String key, Class<U> type, Consumer<JSONSchemaBuilder<U>> builderConsumer,
+      Collector<? super U, A, R> collector, BiConsumer<? super T, ? super R> resultConsumer) {
+    JSONSchemaBuilder<U> builder = new JSONSchemaBuilder<>(lookup, type, null);
+    ruleMap.put(key, new CollectorEntryRule(key, builder, collector, resultConsumer));
+    builderConsumer.accept(builder);
+    return this;
+  }
+
+  /**
+   * Declares that the object described by the current builder has
+   * an entry named {@code key} of type {@code type} which objects
+   * are accumulated by a collector.
+   * Unlike {@link #entry(String, Class, BiConsumer)},
+   * no stream is created for each object of the current builder.
+   * 
+   * @param key name of the entry.
+   * @param type type of the objects of this entry.
+   * @param collector a collector that will accumulate the JSON objects
+   *        corresponding to the entry during the parsing.
+   * @param resultConsumer a consumer that will be called with the object described
+   *        by the current builder and the result of the collector.
+   * @return the current schema builder.
+   */
+  public <U, A, R> JSONSchemaBuilder<T> entry(String key, Class<U> type,
+      Collector<? super U, A, R> collector, BiConsumer<? super T, ? super R> resultConsumer) {
+    JSONSchemaBuilder<U> builder = new JSONSchemaBuilder<>(lookup, type, null);
+    ruleMap.put(key, new CollectorEntryRule(key, builder, collector, resultConsumer));
     return this;
   }
 
@@ -515,7 +2847,7 @@ public class JSONSchemaBuilder<T> {
    * @return the current schema builder.
    */
   public JSONSchemaBuilder<T> value(String key, BiIntValueConsumer<? super T> valueConsumer) {
-    ruleMap.put(key, asSetter(BIINTVALUECONSUMER_ACCEPT, valueConsumer, Integer.class));
+    ruleMap.put(key, new IntValueRule(BIINTVALUECONSUMER_ACCEPT.bindTo(valueConsumer)));
     return this;
   }
 
@@ -529,7 +2861,7 @@ public class JSONSchemaBuilder<T> {
    * @return the current schema builder.
    */
   public JSONSchemaBuilder<T> value(String key, BiLongValueConsumer<? super T> valueConsumer) {
-    ruleMap.put(key, asSetter(BILONGVALUECONSUMER_ACCEPT, valueConsumer, Long.class));
+    ruleMap.put(key, new LongValueRule(BILONGVALUECONSUMER_ACCEPT.bindTo(valueConsumer)));
     return this;
   }
 
@@ -543,7 +2875,364 @@ public class JSONSchemaBuilder<T> {
    * @return the current schema builder.
    */
   public JSONSchemaBuilder<T> value(String key, BiDoubleValueConsumer<? super T> valueConsumer) {
-    ruleMap.put(key, asSetter(BIDOUBLEVALUECONSUMER_ACCEPT, valueConsumer, Double.class));
+    ruleMap.put(key, new DoubleValueRule(BIDOUBLEVALUECONSUMER_ACCEPT.bindTo(valueConsumer)));
+    return this;
+  }
+
+  /**
+   * Declares the getter used to write the value named {@code key}
+   * of the objects described by the current builder.
+   * If the key is an entry, the value can be an object, an {@link Iterable},
+   * a {@link Stream} or an array of objects of the entry, otherwise
+   * the value can be null, a string, a number, a boolean, an enum,
+   * a map, an iterable, a stream or an array of values.
+   * 
+   * @param key name of the value.
+   * @param getter a function that returns the value of an object.
+   * @return the current schema builder.
+   * 
+   * @see JSONSchema#writer(java.io.OutputStream)
+   */
+  public JSONSchemaBuilder<T> getter(String key, Function<? super T, ?> getter) {
+    getterMap.put(key, FUNCTION_APPLY.bindTo(getter));
+    return this;
+  }
+
+  /**
+   * Declares the getter used to write the primitive value named {@code key}
+   * of type int of the objects described by the current builder.
+   * 
+   * @param key name of the value.
+   * @param getter a function that returns the value of an object.
+   * @return the current schema builder.
+   */
+  public JSONSchemaBuilder<T> getterInt(String key, ToIntFunction<? super T> getter) {
+    getterMap.put(key, TOINTFUNCTION_APPLYASINT.bindTo(getter));
+    return this;
+  }
+
+  /**
+   * Declares the getter used to write the primitive value named {@code key}
+   * of type long of the objects described by the current builder.
+   * 
+   * @param key name of the value.
+   * @param getter a function that returns the value of an object.
+   * @return the current schema builder.
+   */
+  public JSONSchemaBuilder<T> getterLong(String key, ToLongFunction<? super T> getter) {
+    getterMap.put(key, TOLONGFUNCTION_APPLYASLONG.bindTo(getter));
+    return this;
+  }
+
+  /**
+   * Declares the getter used to write the primitive value named {@code key}
+   * of type double of the objects described by the current builder.
+   * 
+   * @param key name of the value.
+   * @param getter a function that returns the value of an object.
+   * @return the current schema builder.
+   */
+  public JSONSchemaBuilder<T> getterDouble(String key, ToDoubleFunction<? super T> getter) {
+    getterMap.put(key, TODOUBLEFUNCTION_APPLYASDOUBLE.bindTo(getter));
+    return this;
+  }
+
+  /**
+   * Declares that the objects are created by calling the constructor which parameters
+   * are the values of the keys, once all the keys of an object are parsed.
+   * The fields of the objects are never modified, so they can be final.
+   * The constructor of a record is used by default with the names of its components as keys.
+   *
+   * A key which is not declared is bound to the parameter as an implicit field would be,
+   * an entry which is a parameter is declared with
+   * {@link #parameter(String, Class, Consumer, Collector)}, the keys of the JSON
+   * which are not parameters are ignored.
+   *
+   * @param keys the keys of the parameters of the constructor in order,
+   *        the class must have exactly one constructor with that number of parameters.
+   * @return the current schema builder.
+   */
+  public JSONSchemaBuilder<T> constructor(String... keys) {
+    constructorKeys = keys.clone();
+    return this;
+  }
+
+  /**
+   * Declares that the parameter {@code key} of the constructor is the result of
+   * the collector applied to the objects of the entry {@code key}.
+   *
+   * @param key name of the entry and of the parameter.
+   * @param type type of the objects of this entry.
+   * @param builderConsumer a consumer that will be called with a builder to provide
+   *        a description of the values and entries of the objects of this entry.
+   * @param collector a collector that accumulates the objects of the entry.
+   * @return the current schema builder.
+   *
+   * @see #constructor(String...)
+   */
+  public <U, A, R> JSONSchemaBuilder<T> parameter(String key, Class<U> type, Consumer<JSONSchemaBuilder<U>> builderConsumer,
+      Collector<? super U, A, R> collector) {
+    JSONSchemaBuilder<U> builder = new JSONSchemaBuilder<>(lookup, type, null);
+    ruleMap.put(key, new CollectorEntryRule(key, builder, collector, null));
+    builderConsumer.accept(builder);
+    return this;
+  }
+
+  /**
+   * Declares that the parameter {@code key} of the constructor is the result of
+   * the collector applied to the objects of the entry {@code key}.
+   *
+   * @param key name of the entry and of the parameter.
+   * @param type type of the objects of this entry.
+   * @param collector a collector that accumulates the objects of the entry.
+   * @return the current schema builder.
+   *
+   * @see #parameter(String, Class, Consumer, Collector)
+   */
+  public <U, A, R> JSONSchemaBuilder<T> parameter(String key, Class<U> type, Collector<? super U, A, R> collector) {
+    JSONSchemaBuilder<U> builder = new JSONSchemaBuilder<>(lookup, type, null);
+    ruleMap.put(key, new CollectorEntryRule(key, builder, collector, null));
+    return this;
+  }
+
+  /**
+   * Declares that the values selected by the path in the current object are sent to the consumer,
+   * the values along the path are not bound and the values outside the path are skipped.
+   * The paths of a builder are compiled in a single automaton, so a value is visited once
+   * whatever the number of paths.
+   *
+   * A path is a list of keys separated by '.' or a JSON pointer (keys prefixed by '/'),
+   * a key {@code *} matches any key. The arrays are traversed, so {@code "servlet.init-param"}
+   * selects the {@code init-param} of all the objects of the array {@code servlet},
+   * it can also be written {@code "servlet[*].init-param"}.
+   * A path can not select a value that contains the values selected by another path.
+   *
+   * If the type is {@code String}, {@code Boolean}, a subclass of {@code Number} or {@code Object},
+   * the selected values are primitive values converted as by {@link #value(String, Class, BiConsumer)},
+   * otherwise the selected values are objects which fields are implicitly declared.
+   *
+   * @param path the path of the values from the current object.
+   * @param type the type of the selected values.
+   * @param consumer a consumer called with the current object and each selected value.
+   * @return the current schema builder.
+   */
+  public <U> JSONSchemaBuilder<T> path(String path, Class<U> type, BiConsumer<? super T, ? super U> consumer) {
+    if (type == Object.class || type == String.class || type == Boolean.class || Number.class.isAssignableFrom(type)) {
+      pathTree(path).target = asSetter(BICONSUMER_ACCEPT, consumer, type);
+      return this;
+    }
+    return path(path, type, builder -> { /* implicit fields */ }, consumer);
+  }
+
+  /**
+   * Declares that the objects selected by the path in the current object are sent to the consumer,
+   * the objects are described by a builder.
+   *
+   * @param path the path of the values from the current object.
+   * @param type the type of the selected objects.
+   * @param builderConsumer a consumer that will be called with a builder to provide
+   *        a description of the values and entries of the selected objects.
+   * @param consumer a consumer called with the current object and each selected object.
+   * @return the current schema builder.
+   *
+   * @see #path(String, Class, BiConsumer)
+   */
+  public <U> JSONSchemaBuilder<T> path(String path, Class<U> type, Consumer<JSONSchemaBuilder<U>> builderConsumer,
+      BiConsumer<? super T, ? super U> consumer) {
+    JSONSchemaBuilder<U> builder = new JSONSchemaBuilder<>(lookup, type, null);
+    pathTree(path).target = new ConsumerEntryRule(path, builder, consumer);
+    builderConsumer.accept(builder);
+    return this;
+  }
+
+  // the node of the tree at the end of the path
+  private PathTree pathTree(String path) {
+    String[] keys;
+    if (path.startsWith("/")) {  // JSON pointer
+      keys = path.substring(1).split("/", -1);
+      for(int i = 0; i < keys.length; i++) {
+        keys[i] = keys[i].replace("~1", "/").replace("~0", "~");
+      }
+    } else {
+      keys = path.split("\\.", -1);
+      for(int i = 0; i < keys.length; i++) {
+        if (keys[i].endsWith("[*]")) {
+          keys[i] = keys[i].substring(0, keys[i].length() - 3);
+        }
+      }
+    }
+    PathTree node = paths;
+    for(String key: keys) {
+      if (key.isEmpty()) {
+        throw new IllegalArgumentException("invalid path " + path);
+      }
+      node = node.child(key);
+    }
+    if (node.target != null) {
+      throw new IllegalStateException("the path " + path + " is already declared");
+    }
+    return node;
+  }
+
+  /**
+   * Declares that only the objects which value of the key satisfies the predicate are parsed,
+   * the other objects are skipped as soon as the value is read and are never sent to
+   * the stream or the collector of their entry. An object without the key is skipped.
+   * The value is then bound as if there was no where rule.
+   *
+   * @param key name of the value.
+   * @param type the type of the value as for {@link #value(String, Class, BiConsumer)}.
+   * @param predicate a predicate called with the value.
+   * @return the current schema builder.
+   */
+  public <U> JSONSchemaBuilder<T> where(String key, Class<U> type, Predicate<? super U> predicate) {
+    if (type.isPrimitive()) {
+      throw new IllegalArgumentException("primitive type are not valid here");
+    }
+    whereMap.put(key, new ObjectWhereRule(0, null, type, predicate));
+    return this;
+  }
+
+  /**
+   * Declares that only the objects which int value of the key satisfies the predicate are parsed,
+   * an object which value is null is skipped.
+   *
+   * @param key name of the value.
+   * @param predicate a predicate called with the value.
+   * @return the current schema builder.
+   *
+   * @see #where(String, Class, Predicate)
+   */
+  public JSONSchemaBuilder<T> whereInt(String key, IntPredicate predicate) {
+    whereMap.put(key, new IntWhereRule(0, null, predicate));
+    return this;
+  }
+
+  /**
+   * Declares that only the objects which long value of the key satisfies the predicate are parsed,
+   * an object which value is null is skipped.
+   *
+   * @param key name of the value.
+   * @param predicate a predicate called with the value.
+   * @return the current schema builder.
+   *
+   * @see #where(String, Class, Predicate)
+   */
+  public JSONSchemaBuilder<T> whereLong(String key, LongPredicate predicate) {
+    whereMap.put(key, new LongWhereRule(0, null, predicate));
+    return this;
+  }
+
+  /**
+   * Declares that only the objects which double value of the key satisfies the predicate are parsed,
+   * an object which value is null is skipped.
+   *
+   * @param key name of the value.
+   * @param predicate a predicate called with the value.
+   * @return the current schema builder.
+   *
+   * @see #where(String, Class, Predicate)
+   */
+  public JSONSchemaBuilder<T> whereDouble(String key, DoublePredicate predicate) {
+    whereMap.put(key, new DoubleWhereRule(0, null, predicate));
+    return this;
+  }
+
+  /**
+   * Declares a column of a columnar schema which values are the values of the key.
+   * The type of the column is either {@code int.class}, {@code long.class},
+   * {@code double.class} or {@code String.class}, the values of a string column
+   * which are not strings are stored as their text.
+   *
+   * @param key name of the value.
+   * @param type the type of the column.
+   * @return the current schema builder.
+   * @throws IllegalStateException if the schema is not columnar.
+   *
+   * @see #columnar(int, Consumer)
+   */
+  public JSONSchemaBuilder<T> column(String key, Class<?> type) {
+    if (columnTypes == null) {
+      throw new IllegalStateException("a column can only be declared on a columnar schema");
+    }
+    if (type != int.class && type != long.class && type != double.class && type != String.class) {
+      throw new IllegalArgumentException("invalid column type " + type.getName());
+    }
+    columnTypes.put(Objects.requireNonNull(key), type);
+    return this;
+  }
+
+  /**
+   * Declares that the object described by the current builder has a string value named {@code key}
+   * which is sent to the consumer by chunks instead of being decoded as one string,
+   * so the memory used to parse the value is bounded whatever its length.
+   * The chunks are either the unescaped UTF-8 bytes of the value ({@code ByteBuffer.class})
+   * or its characters ({@code CharBuffer.class}), a multi bytes sequence may be split
+   * between two byte chunks but not a character.
+   * The consumer is called at least once for a string, the last call has {@code last} set,
+   * it is not called if the value is null.
+   * The chunks are views of buffers which are reused, they are only valid during the call.
+   *
+   * @param key name of the value.
+   * @param chunkType {@code ByteBuffer.class} or {@code CharBuffer.class}.
+   * @param chunkConsumer a consumer called with the current object and each chunk of the value.
+   * @return the current schema builder.
+   */
+  public <B extends Buffer> JSONSchemaBuilder<T> chunkedValue(String key, Class<B> chunkType, ChunkConsumer<? super T, ? super B> chunkConsumer) {
+    if (chunkType != ByteBuffer.class && chunkType != CharBuffer.class) {
+      throw new IllegalArgumentException("invalid chunk type " + chunkType.getName());
+    }
+    ruleMap.put(key, new ChunkedRule(Objects.requireNonNull(chunkConsumer), chunkType == CharBuffer.class));
+    return this;
+  }
+
+  /**
+   * Declares that the value of the entry {@code key} is sent as is to the consumer,
+   * whatever its type, the value is skipped without being parsed and its bytes are not copied.
+   * The raw value is only valid during the call of the consumer.
+   *
+   * @param key name of the entry.
+   * @param rawConsumer a consumer called with the current object and the bytes of the value.
+   * @return the current schema builder.
+   *
+   * @see JSONRawValue#copy()
+   */
+  public JSONSchemaBuilder<T> raw(String key, BiConsumer<? super T, ? super JSONRawValue> rawConsumer) {
+    ruleMap.put(key, new RawRule(rawConsumer));
+    return this;
+  }
+
+  /**
+   * Returns the same instance for the equal strings of the values of the object and of the objects
+   * of its entries, instead of a new string for each value.
+   * The strings are looked up in a table of bounded size from their bytes, so a string already
+   * in the table is not decoded again; the strings longer than 64 bytes are never stored.
+   * The table is shared by all the streams of the schema.
+   *
+   * @param capacity the maximum number of strings of the table.
+   * @return the current schema builder.
+   *
+   * @see #canonicalStrings(int, String...)
+   */
+  public JSONSchemaBuilder<T> canonicalStrings(int capacity) {
+    strings = new StringCache(capacity);
+    return this;
+  }
+
+  /**
+   * Returns the same instance for the equal strings of the values of the keys.
+   * The keys share a table of bounded size, which is used instead of the one of
+   * {@link #canonicalStrings(int)}.
+   *
+   * @param capacity the maximum number of strings of the table.
+   * @param keys the keys of the values.
+   * @return the current schema builder.
+   */
+  public JSONSchemaBuilder<T> canonicalStrings(int capacity, String... keys) {
+    StringCache strings = new StringCache(capacity);
+    for(String key: keys) {
+      stringsMap.put(key, strings);
+    }
     return this;
   }
 
@@ -0,0 +1,91 @@
+package jsonjedi;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters updated by the streams of the schemas monitored by these statistics.
+ * The counters are updated concurrently by the streams, so the values are
+ * only a snapshot if a stream is running.
+ * 
+ * The statistics can be registered as a platform MXBean:
+ * <pre>
+ *   JSONSchemaStatistics statistics = new JSONSchemaStatistics();
+ *   JSONSchema&lt;User&gt; monitored = schema.monitor(statistics);
+ *   ManagementFactory.getPlatformMBeanServer().registerMBean(statistics,
+ *       new ObjectName("jsonjedi:type=JSONSchemaStatistics,name=users"));
+ * </pre>
+ * 
+ * @see JSONSchema#monitor(JSONSchemaStatistics)
+ */
+public final class JSONSchemaStatistics implements JSONSchemaStatisticsMXBean {
+  final LongAdder streamCount = new LongAdder();
+  final LongAdder bytesRead = new LongAdder();
+  final LongAdder objectCount = new LongAdder();
+  private final ConcurrentHashMap<Class<?>, LongAdder> objectCountByType = new ConcurrentHashMap<>();
+  final LongAdder discardedKeyCount = new LongAdder();
+  final LongAdder parseTime = new LongAdder();
+  final LongAdder callbackTime = new LongAdder();
+
+  void published(Class<?> type) {
+    objectCount.increment();
+    objectCountByType.computeIfAbsent(type, key -> new LongAdder()).increment();
+  }
+
+  @Override
+  public long getStreamCount() {
+    return streamCount.sum();
+  }
+
+  @Override
+  public long getBytesRead() {
+    return bytesRead.sum();
+  }
+
+  @Override
+  public long getObjectCount() {
+    return objectCount.sum();
+  }
+
+  @Override
+  public Map<String, Long> getObjectCountByType() {
+    TreeMap<String, Long> map = new TreeMap<>();
+    objectCountByType.forEach((type, count) -> map.put(type.getName(), count.sum()));
+    return map;
+  }
+
+  @Override
+  public long getDiscardedKeyCount() {
+    return discardedKeyCount.sum();
+  }
+
+  @Override
+  public long getParseTime() {
+    return parseTime.sum();
+  }
+
+  @Override
+  public long getCallbackTime() {
+    return callbackTime.sum();
+  }
+
+  @Override
+  public void reset() {
+    streamCount.reset();
+    bytesRead.reset();
+    objectCount.reset();
+    objectCountByType.clear();
+    discardedKeyCount.reset();
+    parseTime.reset();
+    callbackTime.reset();
+  }
+
+  @Override
+  public String toString() {
+    return "streams: " + getStreamCount() + " bytes: " + getBytesRead() +
+        " objects: " + getObjectCountByType() + " discarded keys: " + getDiscardedKeyCount() +
+        " parse time: " + getParseTime() + "ns callback time: " + getCallbackTime() + "ns";
+  }
+}
@@ -0,0 +1,59 @@
+package jsonjedi;
+
+import java.util.Map;
+
+/**
+ * Management interface of the {@link JSONSchemaStatistics statistics} of monitored schemas.
+ * 
+ * @see JSONSchema#monitor(JSONSchemaStatistics)
+ */
+public interface JSONSchemaStatisticsMXBean {
+  /**
+   * Returns the number of streams created by the monitored schemas.
+   * @return the number of streams created by the monitored schemas.
+   */
+  public long getStreamCount();
+
+  /**
+   * Returns the number of bytes read, the characters of a reader
+   * are counted as UTF-8 bytes.
+   * @return the number of bytes read.
+   */
+  public long getBytesRead();
+
+  /**
+   * Returns the number of objects published, including the objects of the entries.
+   * @return the number of objects published.
+   */
+  public long getObjectCount();
+
+  /**
+   * Returns the number of objects published by name of the class of the objects.
+   * @return the number of objects published by name of the class of the objects.
+   */
+  public Map<String, Long> getObjectCountByType();
+
+  /**
+   * Returns the number of values skipped because their key is not part of the schema.
+   * @return the number of values skipped because their key is not part of the schema.
+   */
+  public long getDiscardedKeyCount();
+
+  /**
+   * Returns the time in nanoseconds spent by the parser.
+   * @return the time in nanoseconds spent by the parser.
+   */
+  public long getParseTime();
+
+  /**
+   * Returns the time in nanoseconds spent in the consumers of the values,
+   * of the entries and of the streams.
+   * @return the time in nanoseconds spent in the consumers.
+   */
+  public long getCallbackTime();
+
+  /**
+   * Resets all the counters to zero.
+   */
+  public void reset();
+}
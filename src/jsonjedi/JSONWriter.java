@@ -0,0 +1,597 @@
+package jsonjedi;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.lang.reflect.WildcardType;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.MalformedInputException;
+import java.nio.charset.CoderResult;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Stream;
+
+import jsonjedi.JSONSchemaBuilder.EntryProperty;
+import jsonjedi.JSONSchemaBuilder.ObjectProperty;
+import jsonjedi.JSONSchemaBuilder.Property;
+
+/**
+ * Writes the objects of a schema as UTF-8 encoded JSON.
+ *
+ * The values of the objects are read using the getters declared by
+ * {@link JSONSchemaBuilder#getter(String, java.util.function.Function)}
+ * and the implicit fields, the objects of the entries are written
+ * using the builder of the entry.
+ *
+ * The implicit fields which type can not be written as a JSON value
+ * and is not the type of an entry are rejected when the writer is created.
+ *
+ * The JSON is encoded in a buffer which is written to the output when full,
+ * a writer is not thread safe.
+ *
+ * @param <T> type of the objects written.
+ *
+ * @see JSONSchema#writer(OutputStream)
+ */
+public final class JSONWriter<T> implements Closeable, Flushable {
+  private static final int BUFFER_SIZE = 8192;
+  private static final int SEGMENT_SIZE = 1024;  // number of chars of a string encoded at once
+  private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8 };
+  private static final byte[] HEX = "0123456789abcdef".getBytes(UTF_8);
+  // the types known by writeValue()
+  private static final Class<?>[] VALUE_TYPES = {
+      String.class, Number.class, Boolean.class, CharSequence.class, Character.class, Enum.class,
+      JSONRawValue.class, Map.class, Iterable.class, Stream.class, Object[].class,
+      int[].class, long[].class, double[].class };
+
+  private final JSONSchemaBuilder<T> builder;
+  private final OutputStream output;    // null if the output is a writer
+  private final Writer writer;          // null if the output is an output stream
+  private final CharsetDecoder decoder;
+  private final CharBuffer chars;
+
+  private byte[] buffer = new byte[BUFFER_SIZE];
+  private int size;
+
+  JSONWriter(JSONSchemaBuilder<T> builder, OutputStream output, Writer writer) {
+    if (builder != null) {
+      checkWritable(builder, new HashSet<>());
+    }
+    this.builder = builder;
+    this.output = output;
+    this.writer = writer;
+    if (writer != null) {
+      decoder = UTF_8.newDecoder();
+      chars = CharBuffer.allocate(BUFFER_SIZE);
+    } else {
+      decoder = null;
+      chars = null;
+    }
+  }
+
+  /**
+   * Writes an object.
+   *
+   * @param object the object to write.
+   * @throws IOException if an IO error occurs.
+   */
+  public void write(T object) throws IOException {
+    writeObject(builder, Objects.requireNonNull(object));
+  }
+
+  /**
+   * Writes the objects of a stream as a JSON array.
+   *
+   * @param stream a stream of objects.
+   * @throws IOException if an IO error occurs.
+   */
+  public void writeArray(Stream<? extends T> stream) throws IOException {
+    writeByte('[');
+    boolean first = true;
+    for(Iterator<? extends T> it = stream.iterator(); it.hasNext();) {
+      if (!first) {
+        writeByte(',');
+      }
+      first = false;
+      writeObject(builder, Objects.requireNonNull(it.next()));
+    }
+    writeByte(']');
+  }
+
+  /**
+   * Writes the objects of a stream as JSON lines (newline delimited JSON).
+   *
+   * @param stream a stream of objects.
+   * @throws IOException if an IO error occurs.
+   *
+   * @see JSONSchema#streamLines(java.io.Reader)
+   */
+  public void writeLines(Stream<? extends T> stream) throws IOException {
+    for(Iterator<? extends T> it = stream.iterator(); it.hasNext();) {
+      writeObject(builder, Objects.requireNonNull(it.next()));
+      writeByte('\n');
+    }
+  }
+
+  /**
+   * Writes the buffered JSON to the output and flushes the output.
+   * @throws IOException if an IO error occurs.
+   */
+  @Override
+  public void flush() throws IOException {
+    flushBuffer();
+    if (output != null) {
+      output.flush();
+    } else {
+      writer.flush();
+    }
+  }
+
+  /**
+   * Writes the buffered JSON to the output and closes the output.
+   * @throws IOException if an IO error occurs or if the output is a writer
+   *         and a raw value is not valid UTF-8.
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      flushBuffer();
+      if (size != 0) {  // an incomplete UTF-8 sequence
+        int length = size;
+        size = 0;
+        throw new MalformedInputException(length);
+      }
+    } finally {
+      if (output != null) {
+        output.close();
+      } else {
+        writer.close();
+      }
+    }
+  }
+
+  // the bytes of an incomplete UTF-8 sequence at the end of the buffer are kept,
+  // a malformed sequence, written by a raw value, raises an exception
+  private void flushBuffer() throws IOException {
+    if (output != null) {
+      output.write(buffer, 0, size);
+      size = 0;
+      return;
+    }
+    ByteBuffer bytes = ByteBuffer.wrap(buffer, 0, size);
+    for(;;) {
+      CoderResult result = decoder.decode(bytes, chars, false);
+      writer.write(chars.array(), 0, chars.position());
+      chars.clear();
+      if (result.isError()) {
+        size = 0;
+        result.throwException();
+      }
+      if (!result.isOverflow()) {
+        break;
+      }
+    }
+    int remaining = bytes.remaining();
+    System.arraycopy(buffer, bytes.position(), buffer, 0, remaining);
+    size = remaining;
+  }
+
+  // makes room for n bytes
+  private void ensure(int n) throws IOException {
+    if (buffer.length - size >= n) {
+      return;
+    }
+    if (output != null || writer != null) {
+      flushBuffer();
+    }
+    if (buffer.length - size < n) {
+      buffer = Arrays.copyOf(buffer, Math.max(size + n, buffer.length << 1));
+    }
+  }
+
+  void writeByte(char c) throws IOException {
+    ensure(1);
+    buffer[size++] = (byte)c;
+  }
+
+  void writeBytes(byte[] bytes) throws IOException {
+    writeBytes(bytes, 0, bytes.length);
+  }
+
+  void writeBytes(byte[] bytes, int offset, int length) throws IOException {
+    ensure(length);
+    System.arraycopy(bytes, offset, buffer, size, length);
+    size += length;
+  }
+
+  // the string only contains ASCII characters
+  private void writeAscii(String s) throws IOException {
+    int length = s.length();
+    ensure(length);
+    byte[] buffer = this.buffer;
+    int size = this.size;
+    for(int i = 0; i < length; i++) {
+      buffer[size++] = (byte)s.charAt(i);
+    }
+    this.size = size;
+  }
+
+  // encodes a key followed by a ':'
+  static byte[] encodeName(String key) {
+    JSONWriter<?> writer = new JSONWriter<>(null, null, null);
+    try {
+      writer.writeString(key);
+      writer.writeByte(':');
+    } catch (IOException e) {  // no output
+      throw new AssertionError(e);
+    }
+    return Arrays.copyOf(writer.buffer, writer.size);
+  }
+
+  void writeString(String s) throws IOException {
+    writeByte('"');
+    int length = s.length();
+    int i = 0;
+    while(i < length) {
+      // reserve the room for the worst case, a \\u escape per char
+      int end = Math.min(length, i + SEGMENT_SIZE);
+      ensure((end - i) * 6);
+      byte[] buffer = this.buffer;
+      int size = this.size;
+      for(; i < end; i++) {
+        char c = s.charAt(i);
+        if (c < 0x80) {
+          if (c >= 0x20 && c != '"' && c != '\\') {
+            buffer[size++] = (byte)c;
+            continue;
+          }
+          size = escape(buffer, size, c);
+          continue;
+        }
+        if (c < 0x800) {
+          buffer[size++] = (byte)(0xC0 | (c >> 6));
+          buffer[size++] = (byte)(0x80 | (c & 0x3F));
+          continue;
+        }
+        if (Character.isSurrogate(c)) {
+          char low;
+          if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(low = s.charAt(i + 1))) {
+            int codePoint = Character.toCodePoint(c, low);
+            buffer[size++] = (byte)(0xF0 | (codePoint >> 18));
+            buffer[size++] = (byte)(0x80 | ((codePoint >> 12) & 0x3F));
+            buffer[size++] = (byte)(0x80 | ((codePoint >> 6) & 0x3F));
+            buffer[size++] = (byte)(0x80 | (codePoint & 0x3F));
+            i++;  // 4 bytes for 2 chars, so the reserved room is enough
+            continue;
+          }
+          size = escape(buffer, size, c);  // an unpaired surrogate
+          continue;
+        }
+        buffer[size++] = (byte)(0xE0 | (c >> 12));
+        buffer[size++] = (byte)(0x80 | ((c >> 6) & 0x3F));
+        buffer[size++] = (byte)(0x80 | (c & 0x3F));
+      }
+      this.size = size;
+    }
+    writeByte('"');
+  }
+
+  private static int escape(byte[] buffer, int size, char c) {
+    buffer[size++] = '\\';
+    switch(c) {
+    case '"':
+    case '\\':
+      buffer[size++] = (byte)c;
+      return size;
+    case '\n':
+      buffer[size++] = 'n';
+      return size;
+    case '\r':
+      buffer[size++] = 'r';
+      return size;
+    case '\t':
+      buffer[size++] = 't';
+      return size;
+    case '\b':
+      buffer[size++] = 'b';
+      return size;
+    case '\f':
+      buffer[size++] = 'f';
+      return size;
+    default:
+      buffer[size++] = 'u';
+      buffer[size++] = HEX[c >> 12];
+      buffer[size++] = HEX[(c >> 8) & 0xF];
+      buffer[size++] = HEX[(c >> 4) & 0xF];
+      buffer[size++] = HEX[c & 0xF];
+      return size;
+    }
+  }
+
+  void writeLong(long value) throws IOException {
+    if (value == Long.MIN_VALUE) {
+      writeAscii("-9223372036854775808");
+      return;
+    }
+    ensure(20);
+    byte[] buffer = this.buffer;
+    int size = this.size;
+    if (value < 0) {
+      buffer[size++] = '-';
+      value = -value;
+    }
+    int digits = 1;
+    for(long v = value; v >= 10; v /= 10) {
+      digits++;
+    }
+    size += digits;
+    for(int i = size - 1; i >= size - digits; i--) {
+      buffer[i] = (byte)('0' + value % 10);
+      value /= 10;
+    }
+    this.size = size;
+  }
+
+  // writes the digits of value with a '.' before the scale last digits
+  private void writeDecimal(long value, int scale) throws IOException {
+    if (value < 0) {
+      writeByte('-');
+      value = -value;
+    }
+    long power = (long)POWERS_OF_TEN[scale];
+    writeLong(value / power);
+    if (scale == 0) {
+      writeAscii(".0");
+      return;
+    }
+    ensure(1 + scale);
+    byte[] buffer = this.buffer;
+    int size = this.size;
+    buffer[size++] = '.';
+    long fraction = value % power;
+    for(int i = size + scale - 1; i >= size; i--) {
+      buffer[i] = (byte)('0' + fraction % 10);
+      fraction /= 10;
+    }
+    this.size = size + scale;
+  }
+
+  // the decimal m / 10^scale is read back as the same double because
+  // both m and 10^scale are exact and the division is correctly rounded
+  void writeDouble(double value) throws IOException {
+    if (Double.isNaN(value) || Double.isInfinite(value)) {
+      throw new IllegalArgumentException("not a valid JSON number " + value);
+    }
+    if (value == 0 && Double.doubleToRawLongBits(value) != 0) {
+      writeAscii("-0.0");
+      return;
+    }
+    if (Math.abs(value) < 1e15) {
+      for(int scale = 0; scale < POWERS_OF_TEN.length; scale++) {
+        double scaled = Math.rint(value * POWERS_OF_TEN[scale]);
+        if (Math.abs(scaled) < 0x1p53 && scaled / POWERS_OF_TEN[scale] == value) {
+          writeDecimal((long)scaled, scale);
+          return;
+        }
+      }
+    }
+    writeAscii(Double.toString(value));
+  }
+
+  // a float is read back as a double then narrowed
+  void writeFloat(float value) throws IOException {
+    if (Float.isNaN(value) || Float.isInfinite(value)) {
+      throw new IllegalArgumentException("not a valid JSON number " + value);
+    }
+    if (value == 0 && Float.floatToRawIntBits(value) != 0) {
+      writeAscii("-0.0");
+      return;
+    }
+    if (Math.abs(value) < 1e15f) {
+      for(int scale = 0; scale < POWERS_OF_TEN.length; scale++) {
+        double scaled = Math.rint(value * POWERS_OF_TEN[scale]);
+        if (Math.abs(scaled) < 0x1p53 && (float)(scaled / POWERS_OF_TEN[scale]) == value) {
+          writeDecimal((long)scaled, scale);
+          return;
+        }
+      }
+    }
+    writeAscii(Float.toString(value));
+  }
+
+  void writeBoolean(boolean value) throws IOException {
+    writeAscii(value? "true": "false");
+  }
+
+  void writeObject(JSONSchemaBuilder<?> builder, Object object) throws IOException {
+    writeByte('{');
+    Property[] properties = builder.properties;
+    for(int i = 0; i < properties.length; i++) {
+      if (i != 0) {
+        writeByte(',');
+      }
+      Property property = properties[i];
+      writeBytes(property.name);
+      try {
+        property.write(this, object);
+      } catch(IOException | Error | RuntimeException e) {
+        throw e;
+      } catch(Throwable t) {
+        throw new AssertionError(t);
+      }
+    }
+    writeByte('}');
+  }
+
+  // the value of an entry is an object, an iterable, a stream or an array of objects
+  void writeEntry(JSONSchemaBuilder<?> builder, Object value) throws IOException {
+    Iterator<?> it;
+    if (value instanceof Iterable) {
+      it = ((Iterable<?>)value).iterator();
+    } else if (value instanceof Stream) {
+      it = ((Stream<?>)value).iterator();
+    } else if (value instanceof Object[]) {
+      it = Arrays.asList((Object[])value).iterator();
+    } else {
+      if (value == null) {
+        writeAscii("null");
+      } else {
+        writeObject(builder, value);
+      }
+      return;
+    }
+    writeByte('[');
+    for(boolean first = true; it.hasNext(); first = false) {
+      if (!first) {
+        writeByte(',');
+      }
+      Object element = it.next();
+      if (element == null) {
+        writeAscii("null");
+      } else {
+        writeObject(builder, element);
+      }
+    }
+    writeByte(']');
+  }
+
+  // checks the implicit fields of the builder and of its entries
+  private static void checkWritable(JSONSchemaBuilder<?> builder, HashSet<JSONSchemaBuilder<?>> visited) {
+    if (!visited.add(builder)) {
+      return;
+    }
+    for(Property property: builder.properties) {
+      if (property instanceof EntryProperty) {
+        checkWritable(((EntryProperty)property).builder, visited);
+        continue;
+      }
+      if (property instanceof ObjectProperty) {
+        ObjectProperty objectProperty = (ObjectProperty)property;
+        if (objectProperty.type != null && !isWritable(objectProperty.type)) {
+          throw new IllegalStateException("no entry or getter declared to write the field " + objectProperty.key +
+              " of type " + objectProperty.type.getTypeName() + " of " + builder.type.getName());
+        }
+      }
+    }
+  }
+
+  // a type is writable if its values may be written by writeValue(),
+  // the elements of the collections and the arrays are checked too
+  private static boolean isWritable(Type type) {
+    if (type instanceof Class) {
+      Class<?> clazz = (Class<?>)type;
+      if (clazz.isPrimitive()) {
+        return true;
+      }
+      if (clazz.isArray() && !clazz.getComponentType().isPrimitive()) {
+        return isWritable(clazz.getComponentType());
+      }
+      for(Class<?> valueType: VALUE_TYPES) {
+        // a super type of a value type, like Object, may contain a value
+        if (valueType.isAssignableFrom(clazz) || clazz.isAssignableFrom(valueType)) {
+          return true;
+        }
+      }
+      return false;
+    }
+    if (type instanceof ParameterizedType) {
+      Class<?> raw = (Class<?>)((ParameterizedType)type).getRawType();
+      Type[] arguments = ((ParameterizedType)type).getActualTypeArguments();
+      if (!isWritable(raw)) {
+        return false;
+      }
+      if (Map.class.isAssignableFrom(raw) && arguments.length == 2) {
+        return isWritable(arguments[1]);
+      }
+      if ((Iterable.class.isAssignableFrom(raw) || Stream.class.isAssignableFrom(raw)) && arguments.length == 1) {
+        return isWritable(arguments[0]);
+      }
+      return true;
+    }
+    if (type instanceof GenericArrayType) {
+      return isWritable(((GenericArrayType)type).getGenericComponentType());
+    }
+    if (type instanceof WildcardType) {
+      return isWritable(((WildcardType)type).getUpperBounds()[0]);
+    }
+    if (type instanceof TypeVariable) {
+      return isWritable(((TypeVariable<?>)type).getBounds()[0]);
+    }
+    return true;
+  }
+
+  void writeValue(Object value) throws IOException {
+    if (value == null) {
+      writeAscii("null");
+    } else if (value instanceof String) {
+      writeString((String)value);
+    } else if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+      writeLong(((Number)value).longValue());
+    } else if (value instanceof Double) {
+      writeDouble((Double)value);
+    } else if (value instanceof Float) {
+      writeFloat((Float)value);
+    } else if (value instanceof Number) {  // BigInteger, BigDecimal, etc
+      writeAscii(value.toString());
+    } else if (value instanceof Boolean) {
+      writeBoolean((Boolean)value);
+    } else if (value instanceof CharSequence || value instanceof Character) {
+      writeString(value.toString());
+    } else if (value instanceof Enum) {
+      writeString(((Enum<?>)value).name());
+    } else if (value instanceof JSONRawValue) {
+      ((JSONRawValue)value).writeTo(this);
+    } else if (value instanceof Map) {
+      writeByte('{');
+      boolean first = true;
+      for(Map.Entry<?, ?> entry: ((Map<?, ?>)value).entrySet()) {
+        if (!first) {
+          writeByte(',');
+        }
+        first = false;
+        writeString(String.valueOf(entry.getKey()));
+        writeByte(':');
+        writeValue(entry.getValue());
+      }
+      writeByte('}');
+    } else if (value instanceof Iterable) {
+      writeValues(((Iterable<?>)value).iterator());
+    } else if (value instanceof Stream) {
+      writeValues(((Stream<?>)value).iterator());
+    } else if (value instanceof Object[]) {
+      writeValues(Arrays.asList((Object[])value).iterator());
+    } else if (value instanceof int[]) {
+      writeValues(Arrays.stream((int[])value).iterator());
+    } else if (value instanceof long[]) {
+      writeValues(Arrays.stream((long[])value).iterator());
+    } else if (value instanceof double[]) {
+      writeValues(Arrays.stream((double[])value).iterator());
+    } else {
+      throw new IllegalArgumentException("no entry declared to write an object of " + value.getClass().getName());
+    }
+  }
+
+  private void writeValues(Iterator<?> it) throws IOException {
+    writeByte('[');
+    for(boolean first = true; it.hasNext(); first = false) {
+      if (!first) {
+        writeByte(',');
+      }
+      writeValue(it.next());
+    }
+    writeByte(']');
+  }
+}
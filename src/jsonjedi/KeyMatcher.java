@@ -0,0 +1,112 @@
+package jsonjedi;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.util.Map;
+
+/**
+ * An immutable table that associates the UTF-8 bytes of a key to a rule.
+ *
+ * The keys are matched directly from the bytes of the lexer buffer,
+ * so looking up a key never creates a String.
+ * The hash function only reads the length and three bytes of a key,
+ * the multiplier is chosen when the table is created to avoid collisions
+ * between the keys of the table.
+ */
+final class KeyMatcher<R> {
+  private final byte[][] keys;
+  private final Object[] rules;
+  private final int multiplier;
+  private final int mask;
+
+  KeyMatcher(Map<String, ? extends R> ruleMap) {
+    byte[][] keys = new byte[ruleMap.size()][];
+    Object[] rules = new Object[keys.length];
+    int index = 0;
+    for(Map.Entry<String, ? extends R> entry: ruleMap.entrySet()) {
+      keys[index] = entry.getKey().getBytes(UTF_8);
+      rules[index] = entry.getValue();
+      index++;
+    }
+
+    int size = Integer.highestOneBit(Math.max(1, keys.length) * 2 - 1) << 1;
+    int bestMultiplier = 31;
+    int bestCollisions = Integer.MAX_VALUE;
+    for(int multiplier = 31; multiplier < 31 + 64 && bestCollisions != 0; multiplier += 2) {
+      int collisions = collisions(keys, multiplier, size - 1);
+      if (collisions < bestCollisions) {
+        bestCollisions = collisions;
+        bestMultiplier = multiplier;
+      }
+    }
+    this.multiplier = bestMultiplier;
+    this.mask = size - 1;
+    this.keys = new byte[size][];
+    this.rules = new Object[size];
+    for(int i = 0; i < keys.length; i++) {
+      int slot = hash(keys[i], 0, keys[i].length, bestMultiplier) & mask;
+      while(this.keys[slot] != null) {
+        slot = (slot + 1) & mask;
+      }
+      this.keys[slot] = keys[i];
+      this.rules[slot] = rules[i];
+    }
+  }
+
+  private static int collisions(byte[][] keys, int multiplier, int mask) {
+    boolean[] used = new boolean[mask + 1];
+    int collisions = 0;
+    for(byte[] key: keys) {
+      int slot = hash(key, 0, key.length, multiplier) & mask;
+      if (used[slot]) {
+        collisions++;
+      }
+      used[slot] = true;
+    }
+    return collisions;
+  }
+
+  private static int hash(byte[] bytes, int start, int end, int multiplier) {
+    int length = end - start;
+    if (length == 0) {
+      return 0;
+    }
+    int hash = length;
+    hash = hash * multiplier + bytes[start];
+    hash = hash * multiplier + bytes[start + (length >> 1)];
+    hash = hash * multiplier + bytes[end - 1];
+    return hash ^ (hash >>> 16);
+  }
+
+  /**
+   * Returns the rule associated to the key encoded in {@code bytes} between
+   * {@code start} and {@code end} or null if the key is unknown.
+   */
+  @SuppressWarnings("unchecked")
+  R match(byte[] bytes, int start, int end) {
+    byte[][] keys = this.keys;
+    int slot = hash(bytes, start, end, multiplier) & mask;
+    for(;;) {
+      byte[] key = keys[slot];
+      if (key == null) {
+        return null;
+      }
+      if (equals(key, bytes, start, end)) {
+        return (R)rules[slot];
+      }
+      slot = (slot + 1) & mask;
+    }
+  }
+
+  private static boolean equals(byte[] key, byte[] bytes, int start, int end) {
+    if (key.length != end - start) {
+      return false;
+    }
+    for(int i = 0; i < key.length; i++) {
+      if (key[i] != bytes[start + i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
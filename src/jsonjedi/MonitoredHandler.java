@@ -0,0 +1,244 @@
+package jsonjedi;
+
+import java.io.IOException;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+import jdk.jfr.Timespan;
+import jsonjedi.JSONLexer.Token;
+import jsonjedi.JSONSchemaBuilder.Context;
+import jsonjedi.JSONSchemaBuilder.EntryRule;
+import jsonjedi.JSONSchemaBuilder.Handler;
+import jsonjedi.JSONSchemaBuilder.ValueRule;
+
+/**
+ * The handler of the streams of a monitored schema, it updates the statistics
+ * of the schema and emits a JFR event per stream and per nested entry.
+ *
+ * This class is only loaded if a schema is monitored, so the handler of
+ * an unmonitored schema is not slowed down by the instrumentation.
+ * The time is split between the parser and the user code by reading
+ * the clock each time the control goes from one to the other.
+ * The user code is the consumers of the values and of the entries
+ * and the consumer of the stream or of the push parser, the time spent
+ * outside of the handler, between two pushes or two documents, is not counted.
+ */
+final class MonitoredHandler extends Handler {
+  @Name("jsonjedi.Stream")
+  @Label("JSON Stream")
+  @Category("JSON")
+  @Description("A stream, or a chunk of a parallel stream, of a monitored JSON schema")
+  static final class StreamEvent extends Event {
+    @Label("Type")
+    String type;
+    
+    @Label("Bytes Read")
+    @DataAmount
+    long bytesRead;
+    
+    @Label("Objects")
+    long objects;
+    
+    @Label("Discarded Keys")
+    long discardedKeys;
+    
+    @Label("Parse Time")
+    @Timespan
+    long parseTime;
+    
+    @Label("Callback Time")
+    @Timespan
+    long callbackTime;
+  }
+
+  @Name("jsonjedi.Entry")
+  @Label("JSON Entry")
+  @Category("JSON")
+  @Description("The objects of a nested entry of a monitored JSON schema")
+  @Threshold("1 ms")
+  static final class EntryEvent extends Event {
+    @Label("Key")
+    String key;
+    
+    @Label("Type")
+    String type;
+  }
+
+  private final JSONSchemaStatistics statistics;
+  private final StreamEvent event = new StreamEvent();
+  private boolean ended;
+
+  // not yet reported to the statistics
+  private long position;
+  private long discardedKeys;
+  private long parseTime;
+  private long callbackTime;
+
+  // what the thread is running
+  private static final int IDLE = 0, PARSING = 1, CALLBACK = 2;
+
+  private int state = IDLE;
+  private long clock;       // time of the last switch between the states
+
+  MonitoredHandler(JSONLexer lexer, boolean split, JSONSchemaStatistics statistics) {
+    super(lexer, split);
+    this.statistics = statistics;
+    position = lexer.position();
+    event.begin();
+    clock = System.nanoTime();
+  }
+
+  // returns the previous state
+  private int switchTo(int state) {
+    long now = System.nanoTime();
+    if (this.state == PARSING) {
+      parseTime += now - clock;
+    } else if (this.state == CALLBACK) {
+      callbackTime += now - clock;
+    }
+    clock = now;
+    int previous = this.state;
+    this.state = state;
+    return previous;
+  }
+
+  private void report() {
+    switchTo(state);
+    long position = lexer.position();
+    long bytesRead = position - this.position;
+    this.position = position;
+    statistics.bytesRead.add(bytesRead);
+    statistics.discardedKeyCount.add(discardedKeys);
+    statistics.parseTime.add(parseTime);
+    statistics.callbackTime.add(callbackTime);
+    event.bytesRead += bytesRead;
+    event.discardedKeys += discardedKeys;
+    event.parseTime += parseTime;
+    event.callbackTime += callbackTime;
+    discardedKeys = parseTime = callbackTime = 0;
+  }
+
+  // the counters are reported for each top level object, so an unfinished stream is counted
+  private boolean published(Context context, boolean found) {
+    if (found && context.object != null) {  // a rejected object is null
+      statistics.published(context.builder.type);
+    }
+    if (context != firstContext || ended) {
+      return found;
+    }
+    report();
+    if (found) {
+      event.objects++;
+      return true;
+    }
+    ended = true;
+    event.end();
+    if (event.shouldCommit()) {
+      event.type = context.builder.type.getName();
+      event.commit();
+    }
+    return false;
+  }
+
+  @Override
+  boolean next(Context context) throws IOException {
+    int previous = switchTo(PARSING);
+    boolean found;
+    try {
+      found = super.next(context);
+    } finally {
+      switchTo(previous);
+    }
+    return published(context, found);
+  }
+
+  @Override
+  boolean nextLine(Context context) throws IOException {
+    int previous = switchTo(PARSING);
+    boolean found;
+    try {
+      found = super.nextLine(context);
+    } finally {
+      switchTo(previous);
+    }
+    return published(context, found);
+  }
+
+  @Override
+  boolean nextRecord(Context context, long start, long end) throws IOException {
+    if (start != -1) {
+      position = start;  // the bytes between the records are not read
+    }
+    int previous = switchTo(PARSING);
+    boolean found;
+    try {
+      found = super.nextRecord(context, start, end);
+    } finally {
+      switchTo(previous);
+    }
+    return published(context, found);
+  }
+
+  @Override
+  void skipStream(Context context) throws IOException {
+    int previous = switchTo(PARSING);
+    try {
+      super.skipStream(context);
+    } finally {
+      switchTo(previous);
+    }
+  }
+
+  @Override
+  int startConsumer() {
+    return switchTo(CALLBACK);
+  }
+
+  @Override
+  void endConsumer(int previous) {
+    switchTo(previous);
+  }
+
+  @Override
+  void discardValue() throws IOException {
+    discardedKeys++;
+    super.discardValue();
+  }
+
+  @Override
+  void bindEntry(EntryRule rule, Object object) throws IOException {
+    EntryEvent event = new EntryEvent();
+    event.begin();
+    int previous = switchTo(CALLBACK);
+    try {
+      super.bindEntry(rule, object);
+    } finally {
+      switchTo(previous);
+    }
+    event.end();
+    if (event.shouldCommit()) {
+      event.key = rule.key;
+      event.type = rule.builder.type.getName();
+      event.commit();
+    }
+  }
+
+  @Override
+  void bindValue(ValueRule rule, Object object, Token token) throws IOException {
+    if (token == Token.BEGIN_ARRAY || token == Token.BEGIN_OBJECT) {  // bind each element
+      super.bindValue(rule, object, token);
+      return;
+    }
+    int previous = switchTo(CALLBACK);
+    try {
+      super.bindValue(rule, object, token);
+    } finally {
+      switchTo(previous);
+    }
+  }
+}
@@ -0,0 +1,199 @@
+package jsonjedi;
+
+import java.util.Arrays;
+import java.util.Spliterator;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * A spliterator that pulls the objects of another spliterator in a producer thread
+ * and hands them over in batches through a bounded single producer/single consumer ring.
+ *
+ * The producer is started by the first traversal and stops at the end of the source,
+ * if the stream is closed or if the source raises an exception, which is then
+ * rethrown to the consumer once the previous objects are consumed.
+ * Nothing tells the spliterator that a short-circuiting operation has stopped
+ * the traversal, so such a stream must be closed to stop the producer.
+ */
+final class PipelinedSpliterator<T> implements Spliterator<T>, Consumer<T> {
+  private static final int BATCH_SIZE = 256;
+  private static final int CAPACITY = 16;  // in batches, a power of 2
+  private static final int MASK = CAPACITY - 1;
+
+  private final Spliterator<T> source;
+  private final ThreadFactory threadFactory;
+  private final Object[][] ring = new Object[CAPACITY][];
+  private volatile long head;       // next batch to consume, written by the consumer
+  private volatile long tail;       // next batch to publish, written by the producer
+  private volatile boolean done;    // the producer has published its last batch
+  private volatile boolean cancelled;
+  private Throwable failure;        // published by done
+  private volatile Thread producer;
+  private volatile Thread consumer;
+
+  // only accessed by the producer
+  private Object[] filling;
+  private int filled;
+
+  // only accessed by the consumer
+  private Object[] batch;
+  private int index;
+
+  PipelinedSpliterator(Spliterator<T> source, ThreadFactory threadFactory) {
+    this.source = source;
+    this.threadFactory = threadFactory;
+  }
+
+  void cancel() {
+    cancelled = true;
+    Thread producer = this.producer;
+    if (producer != null) {
+      LockSupport.unpark(producer);
+    }
+  }
+
+  @Override
+  public void accept(T object) {
+    filling[filled++] = object;
+  }
+
+  private void produce() {
+    try {
+      boolean more = true;
+      while(more && !cancelled) {
+        filling = new Object[BATCH_SIZE];
+        filled = 0;
+        while(filled < BATCH_SIZE && (more = source.tryAdvance(this))) {
+          // the object is stored by accept
+        }
+        Object[] batch = (filled == BATCH_SIZE)? filling: Arrays.copyOf(filling, filled);
+        filling = null;
+        if (!publish(batch)) {
+          return;
+        }
+      }
+    } catch(Throwable t) {
+      if (filled != 0 && filling != null) {  // the objects before the failure
+        publish(Arrays.copyOf(filling, filled));
+      }
+      failure = t;
+    } finally {
+      done = true;
+      wakeUp(consumer);
+    }
+  }
+
+  private boolean publish(Object[] batch) {
+    long tail = this.tail;
+    while(tail - head == CAPACITY) {
+      if (cancelled) {
+        return false;
+      }
+      LockSupport.park(this);
+    }
+    ring[(int)(tail & MASK)] = batch;
+    this.tail = tail + 1;
+    wakeUp(consumer);
+    return true;
+  }
+
+  private static void wakeUp(Thread thread) {
+    if (thread != null) {
+      LockSupport.unpark(thread);
+    }
+  }
+
+  // returns the next batch or null at the end of the stream
+  private Object[] take() {
+    if (producer == null) {
+      Thread thread = threadFactory.newThread(this::produce);
+      producer = thread;
+      thread.start();
+    }
+    long head = this.head;
+    while(head == tail) {
+      if (done) {
+        if (head != tail) {  // published just before done
+          break;
+        }
+        Throwable failure = this.failure;
+        if (failure instanceof RuntimeException) {
+          throw (RuntimeException)failure;
+        }
+        if (failure instanceof Error) {
+          throw (Error)failure;
+        }
+        if (failure != null) {
+          throw new AssertionError(failure);
+        }
+        return null;
+      }
+      consumer = Thread.currentThread();
+      if (head == tail && !done) {
+        LockSupport.park(this);
+      }
+    }
+    int slot = (int)(head & MASK);
+    Object[] batch = ring[slot];
+    ring[slot] = null;
+    this.head = head + 1;
+    wakeUp(producer);
+    return batch;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public boolean tryAdvance(Consumer<? super T> consumer) {
+    Object[] batch = this.batch;
+    if (batch == null || index == batch.length) {
+      if ((batch = take()) == null) {
+        this.batch = null;
+        return false;
+      }
+      this.batch = batch;
+      index = 0;
+      if (batch.length == 0) {
+        return tryAdvance(consumer);
+      }
+    }
+    Object object = batch[index];
+    batch[index++] = null;
+    consumer.accept((T)object);
+    return true;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public void forEachRemaining(Consumer<? super T> consumer) {
+    Object[] batch = this.batch;
+    int index = this.index;
+    this.batch = null;
+    for(;;) {
+      if (batch != null) {
+        for(; index < batch.length; index++) {
+          consumer.accept((T)batch[index]);
+        }
+      }
+      if ((batch = take()) == null) {
+        return;
+      }
+      index = 0;
+    }
+  }
+
+  @Override
+  public Spliterator<T> trySplit() {
+    return null;
+  }
+
+  @Override
+  public long estimateSize() {
+    return Long.MAX_VALUE;
+  }
+
+  @Override
+  public int characteristics() {
+    return source.characteristics() & (ORDERED|DISTINCT|NONNULL);
+  }
+}
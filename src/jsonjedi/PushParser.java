@@ -0,0 +1,241 @@
+package jsonjedi;
+
+import java.io.IOError;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+import jsonjedi.JSONLexer.Token;
+import jsonjedi.JSONSchemaBuilder.Context;
+import jsonjedi.JSONSchemaBuilder.ContextState;
+import jsonjedi.JSONSchemaBuilder.Handler;
+
+/**
+ * Implementation of a push parser.
+ * 
+ * The chunks are appended to a buffer and scanned to find the end of the last
+ * complete top level object (or line), the scanner keeps its state between chunks.
+ * The bytes before this boundary are then parsed by a handler which context
+ * is kept between chunks, and removed from the buffer.
+ */
+final class PushParser<T> implements JSONPushParser {
+  private final Handler handler;
+  private final Context context;
+  private final Consumer<? super T> consumer;
+  private final boolean lines;
+  private final Consumer<? super JSONParseException> errorHandler;  // null if errors are raised
+  private final boolean columnar;  // the objects are rows of batches of columns
+  private JSONColumns batch;       // the batch of the last row, sent when it is full or at the end
+  private boolean closed;
+
+  private byte[] buffer = new byte[8192];
+  private int size;         // number of bytes in the buffer
+  private int scanned;      // number of bytes already scanned
+  private int boundary;     // end of the last complete object or line
+  private int pending;      // number of objects or non blank lines before the boundary
+  private long discarded;   // number of bytes removed from the start of the buffer
+
+  // state of the scanner
+  private int depth;        // depth of the current top level object, 0 if none
+  private boolean inString;
+  private boolean escape;
+  private boolean blank = true;  // the current line is blank
+
+  PushParser(JSONSchemaBuilder<?> builder, JSONSchemaBuilder.HandlerFactory handlerFactory,
+             Consumer<? super T> consumer, boolean lines, Consumer<? super JSONParseException> errorHandler) {
+    this.handler = handlerFactory.create(new JSONLexer(buffer, 0, 0, 0), false);
+    this.context = handler.createFirstContext(builder);
+    context.rejectedAsNull = true;  // the handler must not parse more objects than pending
+    this.consumer = consumer;
+    this.lines = lines;
+    this.errorHandler = errorHandler;
+    this.columnar = builder.columnLayout != null;
+  }
+
+  @Override
+  public void push(ByteBuffer chunk) throws IOException {
+    if (closed) {
+      throw new IllegalStateException("parser is closed");
+    }
+    int length = chunk.remaining();
+    if (buffer.length - size < length) {
+      buffer = Arrays.copyOf(buffer, Math.max(buffer.length << 1, size + length));
+    }
+    chunk.get(buffer, size, length);
+    size += length;
+    if (lines) {
+      scanLines();
+    } else {
+      scan();
+    }
+    if (pending == 0) {
+      return;
+    }
+    parse(boundary);
+
+    System.arraycopy(buffer, boundary, buffer, 0, size - boundary);
+    size -= boundary;
+    scanned -= boundary;
+    discarded += boundary;
+    boundary = 0;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    if (lines && !blank) {  // last line without a '\n'
+      pending++;
+    }
+    parse(size);
+    closed = true;
+    if (lines) {
+      handler.nextLine(context);  // end of stream
+    } else {
+      JSONLexer lexer = handler.lexer;
+      if (context.state == ContextState.END_STREAM && lexer.nextToken() != Token.EOF) {
+        throw lexer.error("unexpected characters after the end of the JSON value");
+      }
+      while(handler.next(context)) {
+        send();
+      }
+    }
+    if (batch != null) {
+      JSONColumns batch = this.batch;
+      this.batch = null;
+      send(batch);
+    }
+  }
+
+  private void scan() {
+    byte[] buffer = this.buffer;
+    int depth = this.depth;
+    boolean inString = this.inString;
+    boolean escape = this.escape;
+    for(int i = scanned; i < size; i++) {
+      byte b = buffer[i];
+      if (inString) {
+        if (escape) {
+          escape = false;
+        } else if (b == '\\') {
+          escape = true;
+        } else if (b == '"') {
+          inString = false;
+        }
+        continue;
+      }
+      switch(b) {
+      case '"':
+        inString = true;
+        break;
+      case '{':
+        depth++;
+        break;
+      case '[':
+        if (depth != 0) {  // otherwise an array of the stream
+          depth++;
+        }
+        break;
+      case '}':
+      case ']':
+        if (depth != 0 && --depth == 0) {
+          pending++;
+          boundary = i + 1;
+        }
+        break;
+      default:
+      }
+    }
+    scanned = size;
+    this.depth = depth;
+    this.inString = inString;
+    this.escape = escape;
+  }
+
+  private void scanLines() {
+    byte[] buffer = this.buffer;
+    boolean blank = this.blank;
+    for(int i = scanned; i < size; i++) {
+      byte b = buffer[i];
+      if (b == '\n') {
+        if (!blank) {
+          pending++;
+          blank = true;
+        }
+        boundary = i + 1;
+      } else if (b != ' ' && b != '\t' && b != '\r') {
+        blank = false;
+      }
+    }
+    scanned = size;
+    this.blank = blank;
+  }
+
+  // parses the pending objects in the bytes of the buffer before end
+  private void parse(int end) throws IOException {
+    handler.reset(new JSONLexer(buffer, -discarded, 0, end));
+    try {
+      for(; pending != 0; pending--) {
+        if (lines) {
+          parseLine();
+          continue;
+        }
+        if (!handler.next(context)) {
+          throw handler.lexer.error("unexpected characters after the end of the JSON value");
+        }
+        send();
+      }
+    } catch(IOException | RuntimeException | Error e) {
+      closed = true;
+      throw e;
+    }
+  }
+
+  private void parseLine() throws IOException {
+    try {
+      if (handler.nextLine(context)) {
+        send();
+      }
+    } catch (JSONParseException e) {
+      if (errorHandler == null) {
+        throw e;
+      }
+      errorHandler.accept(e);
+    } catch (IOError e) {  // raised by the stream of an entry
+      if (errorHandler == null || !(e.getCause() instanceof JSONParseException)) {
+        throw e;
+      }
+      errorHandler.accept((JSONParseException)e.getCause());
+    }
+  }
+
+  // the object is null if it was rejected by a where rule
+  private void send() {
+    Object object = context.object;
+    context.object = null;
+    if (object == null) {
+      return;
+    }
+    if (columnar) {
+      JSONColumns batch = (JSONColumns)object;
+      if (!batch.isFull()) {
+        this.batch = batch;
+        return;
+      }
+      this.batch = null;
+    }
+    send(object);
+  }
+
+  @SuppressWarnings("unchecked")
+  private void send(Object object) {
+    int previous = handler.startConsumer();
+    try {
+      consumer.accept((T)object);
+    } finally {
+      handler.endConsumer(previous);
+    }
+  }
+}
@@ -0,0 +1,80 @@
+package jsonjedi;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.util.Arrays;
+
+/**
+ * A bounded table of strings indexed by their UTF-8 bytes, so a string already
+ * in the table is returned without being decoded.
+ *
+ * The table is two-way set associative: a new string replaces the second string of its set
+ * and is moved first when it is found again, so the strings that are seen only once,
+ * like identifiers, do not evict the frequent ones.
+ * Strings longer than {@link #MAX_LENGTH} bytes are never cached.
+ * The table can be shared by several threads without locking, an entry is immutable
+ * so a thread may miss a string stored by another thread but never sees a partial entry.
+ */
+final class StringCache {
+  static final int MAX_LENGTH = 64;
+
+  private static final class Entry {
+    final byte[] bytes;
+    final String value;
+
+    Entry(byte[] bytes, String value) {
+      this.bytes = bytes;
+      this.value = value;
+    }
+  }
+
+  private final Entry[] entries;
+  private final int mask;  // of the first slot of a set
+
+  StringCache(int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("invalid capacity " + capacity);
+    }
+    int size = Math.max(2, Integer.highestOneBit(capacity - 1) << 1);
+    entries = new Entry[size];
+    mask = size - 2;
+  }
+
+  String get(byte[] bytes, int from, int to) {
+    int length = to - from;
+    if (length > MAX_LENGTH) {
+      return new String(bytes, from, length, UTF_8);
+    }
+    int hash = length;
+    for(int i = from; i < to; i++) {
+      hash = hash * 31 + bytes[i];
+    }
+    int slot = (hash ^ hash >>> 16) & mask;
+    Entry[] entries = this.entries;
+    Entry first = entries[slot];
+    if (first != null && matches(first.bytes, bytes, from, length)) {
+      return first.value;
+    }
+    Entry second = entries[slot + 1];
+    if (second != null && matches(second.bytes, bytes, from, length)) {
+      entries[slot] = second;
+      entries[slot + 1] = first;
+      return second.value;
+    }
+    String value = new String(bytes, from, length, UTF_8);
+    entries[slot + 1] = new Entry(Arrays.copyOfRange(bytes, from, to), value);
+    return value;
+  }
+
+  private static boolean matches(byte[] key, byte[] bytes, int from, int length) {
+    if (key.length != length) {
+      return false;
+    }
+    for(int i = 0; i < length; i++) {
+      if (key[i] != bytes[from + i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+}